@@ -0,0 +1,498 @@
+package com.vdoo.sdk;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/*
+ * Stand-in for the /v3/images/ endpoints of the Vdoo API, for benchmarks and load tests. It runs in-process, or as a
+ * local server with main(). It serves:
+ *   POST /v3/images/upload_request/, GET /v3/images/{uuid}/part/{n}/, the part body itself,
+ *   POST /v3/images/{uuid}/part/{n}/finished/, POST /v3/images/{uuid}/finished/,
+ *   GET /v3/images/{uuid}/scan_status/, which is Success once the scan duration passed since the upload finished,
+ *   GET /v3/images/{uuid}/analysis_results and highlighted_issues, and the paginated list parts (cves...) with
+ *   'reportEntries' entries each, 'pageSize' a page.
+ *
+ * Every response waits for the configured latency. A share of the part uploads, the calls VdooSDK retries, fails with
+ * a 500 (errorRate) or is throttled with a 429 and a Retry-After (throttleRate). Part bodies are read and dropped.
+ * The status and report parts have ETags, and JSON responses are gzip compressed when the client asks for it, like
+ * the API's.
+ *
+ * With a callback URL, the end of every scan is also notified like the API does: a POST of its scan_status with the
+ * image UUID added, signed with the callback secret in an 'X-Vdoo-Signature: sha256=<hex HMAC of the body>' header.
+ */
+public final class FakeVdooApi implements AutoCloseable {
+    private static final Pattern PART = Pattern.compile("/v3/images/([^/]+)/part/(\\d+)/");
+    private static final Pattern PART_BODY = Pattern.compile("/part-upload/([^/]+)/(\\d+)");
+    private static final Pattern PART_FINISHED = Pattern.compile("/v3/images/([^/]+)/part/(\\d+)/finished/");
+    private static final Pattern FINISHED = Pattern.compile("/v3/images/([^/]+)/finished/");
+    private static final Pattern SCAN_STATUS = Pattern.compile("/v3/images/([^/]+)/scan_status/");
+    private static final Pattern REPORT_PART = Pattern.compile("/v3/images/([^/]+)/([a-z_/]+?)/?");
+
+    static final List<String> PAGINATED_PARTS = Arrays.asList(
+            "software_components",
+            "hardware_components",
+            "cves",
+            "exposures",
+            "malicious_files",
+            "potential_zero_days/zero_days",
+            "potential_zero_days/weaknesses"
+    );
+    private static final String[] SEVERITIES = {"Critical", "High", "Medium", "Low", "Info"};
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    public static final class Options {
+        private int port;
+        private long partSizeBytes = 8 * 1024 * 1024;
+        private int maxConcurrency = 10;
+        private long latencyMillis;
+        private long latencyJitterMillis;
+        private double errorRate;
+        private double throttleRate;
+        private int retryAfterSeconds = 1;
+        private long scanDurationMillis;
+        private int reportEntries = 100;
+        private int pageSize = 100;
+        private String callbackUrl;
+        private String callbackSecret;
+
+        // 0 for any free port
+        public Options setPort(int port) {
+            this.port = port;
+            return this;
+        }
+
+        public Options setPartSizeBytes(long partSizeBytes) {
+            this.partSizeBytes = partSizeBytes;
+            return this;
+        }
+
+        // The max_concurrency returned by upload_request
+        public Options setMaxConcurrency(int maxConcurrency) {
+            this.maxConcurrency = maxConcurrency;
+            return this;
+        }
+
+        // Every response waits latencyMillis, plus up to latencyJitterMillis at random
+        public Options setLatency(long latencyMillis, long latencyJitterMillis) {
+            this.latencyMillis = latencyMillis;
+            this.latencyJitterMillis = latencyJitterMillis;
+            return this;
+        }
+
+        // Share of the part uploads, from 0 to 1, answered with a 500
+        public Options setErrorRate(double errorRate) {
+            this.errorRate = errorRate;
+            return this;
+        }
+
+        // Share of the part uploads, from 0 to 1, answered with a 429 and a Retry-After
+        public Options setThrottleRate(double throttleRate, int retryAfterSeconds) {
+            this.throttleRate = throttleRate;
+            this.retryAfterSeconds = retryAfterSeconds;
+            return this;
+        }
+
+        // How long a scan runs once its upload finished
+        public Options setScanDurationMillis(long scanDurationMillis) {
+            this.scanDurationMillis = scanDurationMillis;
+            return this;
+        }
+
+        // Entries of every paginated report part, and entries a page
+        public Options setReportSize(int reportEntries, int pageSize) {
+            this.reportEntries = reportEntries;
+            this.pageSize = Math.max(1, pageSize);
+            return this;
+        }
+
+        // Where to POST the notification of every ended scan, e.g. JENKINS_URL/vdoo-scan-callback/. Null for none.
+        public Options setCallback(String callbackUrl, String callbackSecret) {
+            this.callbackUrl = callbackUrl;
+            this.callbackSecret = callbackSecret;
+            return this;
+        }
+    }
+
+    private final Options options;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, Long> imageSizes = new ConcurrentHashMap<>();
+    // When the upload of an image finished, its scan ends scanDurationMillis later
+    private final Map<String, Long> uploadsFinishedMillis = new ConcurrentHashMap<>();
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong failedCalls = new AtomicLong();
+    private final AtomicLong throttledCalls = new AtomicLong();
+    private final AtomicLong callbacks = new AtomicLong();
+
+    public FakeVdooApi(long partSizeBytes, int maxConcurrency) throws IOException {
+        this(new Options().setPartSizeBytes(partSizeBytes).setMaxConcurrency(maxConcurrency));
+    }
+
+    public FakeVdooApi(Options options) throws IOException {
+        this.options = options;
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), options.port), 0);
+        executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "FakeVdooApi");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    public String getBaseUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    public long getCalls() {
+        return calls.get();
+    }
+
+    // Part uploads answered with a 500 on purpose
+    public long getFailedCalls() {
+        return failedCalls.get();
+    }
+
+    // Part uploads answered with a 429 on purpose
+    public long getThrottledCalls() {
+        return throttledCalls.get();
+    }
+
+    // Notifications of ended scans that the callback URL accepted
+    public long getCallbacks() {
+        return callbacks.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            calls.incrementAndGet();
+            // Bodies are read before answering, so the connection can be kept alive whatever the answer is
+            byte[] body = readBody(exchange.getRequestBody());
+            delay();
+            route(exchange, body);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void route(HttpExchange exchange, byte[] body) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String method = exchange.getRequestMethod();
+        Matcher matcher;
+
+        if (method.equals("POST") && path.equals("/v3/images/upload_request/")) {
+            JsonNode request = VdooHttpClient.getReader().readTree(body);
+            long fileSize = request.path("file_size_bytes").asLong();
+            String imageUuid = UUID.randomUUID().toString();
+            imageSizes.put(imageUuid, fileSize);
+            sendJson(exchange, 200, String.format(
+                    "{\"image_uuid\": \"%s\", \"total_parts\": %d, \"max_concurrency\": %d}",
+                    imageUuid,
+                    Math.max(1, (fileSize + options.partSizeBytes - 1) / options.partSizeBytes),
+                    options.maxConcurrency
+            ), null);
+        } else if (method.equals("GET") && (matcher = PART.matcher(path)).matches()) {
+            long fileSize = imageSizes.getOrDefault(matcher.group(1), 0L);
+            long offset = (Long.parseLong(matcher.group(2)) - 1) * options.partSizeBytes;
+            sendJson(exchange, 200, String.format(
+                    "{\"start_offset_bytes\": %d, \"part_length_bytes\": %d, \"prepared_request_URL\": \"%s\", "
+                            + "\"prepared_request_method\": \"PUT\"}",
+                    offset,
+                    Math.max(0, Math.min(options.partSizeBytes, fileSize - offset)),
+                    getBaseUrl() + "/part-upload/" + matcher.group(1) + "/" + matcher.group(2)
+            ), null);
+        } else if (method.equals("PUT") && PART_BODY.matcher(path).matches()) {
+            double draw = ThreadLocalRandom.current().nextDouble();
+            if (draw < options.errorRate) {
+                failedCalls.incrementAndGet();
+                sendJson(exchange, 500, "{\"details\": \"injected error\"}", null);
+            } else if (draw < options.errorRate + options.throttleRate) {
+                throttledCalls.incrementAndGet();
+                exchange.getResponseHeaders().set("Retry-After", String.valueOf(options.retryAfterSeconds));
+                sendJson(exchange, 429, "{\"details\": \"injected throttling\"}", null);
+            } else {
+                sendJson(exchange, 200, "{}", null);
+            }
+        } else if (method.equals("POST") && PART_FINISHED.matcher(path).matches()) {
+            sendJson(exchange, 200, "{}", null);
+        } else if (method.equals("POST") && (matcher = FINISHED.matcher(path)).matches()) {
+            String imageUuid = matcher.group(1);
+            if (uploadsFinishedMillis.putIfAbsent(imageUuid, System.currentTimeMillis()) == null
+                    && options.callbackUrl != null) {
+                executor.execute(() -> notifyScanEnded(imageUuid));
+            }
+            sendJson(exchange, 200, "{}", null);
+        } else if (method.equals("GET") && (matcher = SCAN_STATUS.matcher(path)).matches()) {
+            Long finishedMillis = uploadsFinishedMillis.get(matcher.group(1));
+            String status;
+            if (finishedMillis == null) {
+                status = "Uploading";
+            } else if (System.currentTimeMillis() - finishedMillis < options.scanDurationMillis) {
+                status = "Analyzing";
+            } else {
+                status = "Success";
+            }
+            sendJson(exchange, 200, String.format(
+                    "{\"analysis_status\": {\"current\": {\"name\": \"%s\", \"error_code\": null}}}",
+                    status
+            ), "\"" + matcher.group(1) + "-" + status + "\"");
+        } else if (method.equals("GET") && (matcher = REPORT_PART.matcher(path)).matches()) {
+            sendReportPart(exchange, matcher.group(1), matcher.group(2));
+        } else {
+            exchange.sendResponseHeaders(404, -1);
+        }
+    }
+
+    private void sendReportPart(HttpExchange exchange, String imageUuid, String partName) throws IOException {
+        String etag = "\"" + imageUuid + "-" + partName.replace('/', '-') + "\"";
+        if (partName.equals("analysis_results")) {
+            sendJson(exchange, 200, String.format(
+                    "{\"name\": \"image-%s.bin\", \"artifact_name\": \"Load test\", \"threat_level\": \"High\", "
+                            + "\"report_link\": \"%s/reports/%s\"}",
+                    imageUuid, getBaseUrl(), imageUuid
+            ), etag);
+            return;
+        }
+        if (partName.equals("highlighted_issues")) {
+            sendJson(exchange, 200, "{\"exposures\": [{\"name\": \"telnet\"}], "
+                    + "\"cves\": [{\"cve_id\": \"CVE-2020-0001\"}], \"malicious_files\": []}", etag);
+            return;
+        }
+        if (!PAGINATED_PARTS.contains(partName)) {
+            exchange.sendResponseHeaders(404, -1);
+            return;
+        }
+
+        String query = exchange.getRequestURI().getRawQuery();
+        int page = query != null && query.startsWith("page=") ? Integer.parseInt(query.substring(5)) : 1;
+        int from = (page - 1) * options.pageSize;
+        int to = Math.min(options.reportEntries, from + options.pageSize);
+        String next = to < options.reportEntries
+                ? getBaseUrl() + "/v3/images/" + imageUuid + "/" + partName + "?page=" + (page + 1)
+                : null;
+
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        try (JsonGenerator generator = FACTORY.createGenerator(json, JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            generator.writeNumberField("count", options.reportEntries);
+            generator.writeStringField("next", next);
+            generator.writeArrayFieldStart("results");
+            for (int i = from; i < to; i++) {
+                writeEntry(generator, partName, i);
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+        // Only the first page is revalidated by the plugin
+        sendJson(exchange, 200, json.toString(StandardCharsets.UTF_8.name()), page == 1 ? etag : null);
+    }
+
+    private static void writeEntry(JsonGenerator generator, String partName, int i) throws IOException {
+        generator.writeStartObject();
+        if (partName.equals("cves")) {
+            generator.writeStringField("cve_id", String.format("CVE-%d-%05d", 2000 + i % 21, i));
+        } else {
+            generator.writeStringField("name", partName.replaceAll(".*/", "") + "-" + i);
+        }
+        generator.writeStringField("severity", SEVERITIES[i % SEVERITIES.length]);
+        generator.writeStringField("description", "A buffer overflow in the parsing of crafted packets allows "
+                + "remote attackers to execute arbitrary code or cause a denial of service, entry " + i + ".");
+        generator.writeEndObject();
+    }
+
+    private void notifyScanEnded(String imageUuid) {
+        try {
+            Thread.sleep(options.scanDurationMillis);
+            byte[] body = String.format(
+                    "{\"image_uuid\": \"%s\", \"analysis_status\": {\"current\": {\"name\": \"Success\", "
+                            + "\"error_code\": null}}}",
+                    imageUuid
+            ).getBytes(StandardCharsets.UTF_8);
+
+            HttpURLConnection connection = (HttpURLConnection) new URL(options.callbackUrl).openConnection();
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            connection.setRequestProperty("X-Vdoo-Signature", "sha256=" + sign(options.callbackSecret, body));
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            }
+            if (connection.getResponseCode() < 300) {
+                callbacks.incrementAndGet();
+            }
+            connection.disconnect();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // A lost notification, the builds find out that the scan ended by polling
+        }
+    }
+
+    private static String sign(String secret, byte[] body) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : mac.doFinal(body)) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void delay() throws InterruptedException {
+        long millis = options.latencyMillis;
+        if (options.latencyJitterMillis > 0) {
+            millis += ThreadLocalRandom.current().nextLong(options.latencyJitterMillis + 1);
+        }
+        if (millis > 0) {
+            Thread.sleep(millis);
+        }
+    }
+
+    private static void sendJson(HttpExchange exchange, int statusCode, String json, String etag) throws IOException {
+        if (etag != null) {
+            exchange.getResponseHeaders().set("ETag", etag);
+            if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+        }
+
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            exchange.sendResponseHeaders(statusCode, 0);
+            try (OutputStream out = new GZIPOutputStream(exchange.getResponseBody())) {
+                out.write(body);
+            }
+            return;
+        }
+
+        exchange.sendResponseHeaders(statusCode, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    // Part bodies are dropped, only the small bodies of the other calls are kept
+    private static byte[] readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[64 * 1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            if (body.size() < 64 * 1024) {
+                body.write(buffer, 0, read);
+            }
+        }
+        return body.toByteArray();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /*
+     * Runs the fake API as a local server until the JVM is stopped, e.g.
+     *   FakeVdooApi --port 8089 --latency-ms 50 --jitter-ms 20 --error-rate 0.01 --report-entries 10000
+     *   FakeVdooApi --scan-ms 30000 --callback-url http://localhost:8080/vdoo-scan-callback/ --callback-secret s
+     */
+    public static void main(String[] args) throws Exception {
+        Options options = parseOptions(args, new Options().setPort(8089));
+        FakeVdooApi api = new FakeVdooApi(options);
+        System.out.println("Fake Vdoo API listening on " + api.getBaseUrl());
+        Thread.currentThread().join();
+    }
+
+    /*
+     * Sets the options given on a command line, leaving other arguments to the caller. Returns the options.
+     */
+    public static Options parseOptions(String[] args, Options options) {
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--port":
+                    options.setPort(Integer.parseInt(args[++i]));
+                    break;
+                case "--part-mb":
+                    options.setPartSizeBytes(Long.parseLong(args[++i]) * 1024 * 1024);
+                    break;
+                case "--max-concurrency":
+                    options.setMaxConcurrency(Integer.parseInt(args[++i]));
+                    break;
+                case "--latency-ms":
+                    options.setLatency(Long.parseLong(args[++i]), options.latencyJitterMillis);
+                    break;
+                case "--jitter-ms":
+                    options.setLatency(options.latencyMillis, Long.parseLong(args[++i]));
+                    break;
+                case "--error-rate":
+                    options.setErrorRate(Double.parseDouble(args[++i]));
+                    break;
+                case "--throttle-rate":
+                    options.setThrottleRate(Double.parseDouble(args[++i]), options.retryAfterSeconds);
+                    break;
+                case "--retry-after-s":
+                    options.setThrottleRate(options.throttleRate, Integer.parseInt(args[++i]));
+                    break;
+                case "--scan-ms":
+                    options.setScanDurationMillis(Long.parseLong(args[++i]));
+                    break;
+                case "--report-entries":
+                    options.setReportSize(Integer.parseInt(args[++i]), options.pageSize);
+                    break;
+                case "--page-size":
+                    options.setReportSize(options.reportEntries, Integer.parseInt(args[++i]));
+                    break;
+                case "--callback-url":
+                    options.setCallback(args[++i], options.callbackSecret);
+                    break;
+                case "--callback-secret":
+                    options.setCallback(options.callbackUrl, args[++i]);
+                    break;
+                default:
+                    // Not an option of the fake API
+            }
+        }
+        return options;
+    }
+}
@@ -0,0 +1,87 @@
+package com.vdoo.sdk;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * The decoding of API responses by VdooHttpClient: binding to the response types straight from the bytes, and whole
+ * calls (the callUrl path of VdooSDK) over a pooled loopback connection to FakeVdooApi, with and without gzip.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ResponseDecodeBenchmark {
+    private static final byte[] SCAN_STATUS = ("{\"analysis_status\": {\"current\": {\"name\": \"Success\", "
+            + "\"error_code\": null}, \"stages\": [{\"name\": \"Extraction\", \"progress\": 100}, "
+            + "{\"name\": \"Analysis\", \"progress\": 100}]}, \"image_uuid\": \"0f3a9c2e-1b2d-4e5f-8a9b-112233445566\"}")
+            .getBytes(StandardCharsets.UTF_8);
+    private static final byte[] PART_DETAILS = ("{\"start_offset_bytes\": 8388608, \"part_length_bytes\": 8388608, "
+            + "\"prepared_request_URL\": \"https://uploads.example.com/images/0f3a9c2e/2?X-Amz-Signature=abcdef\", "
+            + "\"prepared_request_method\": \"PUT\"}").getBytes(StandardCharsets.UTF_8);
+
+    private static final ObjectReader SCAN_STATUS_READER = VdooHttpClient.getReader().forType(ScanStatus.class);
+    private static final ObjectReader PART_DETAILS_READER = VdooHttpClient.getReader().forType(PartDetails.class);
+
+    @Param({"true", "false"})
+    public boolean gzip;
+
+    private FakeVdooApi api;
+    private VdooHttpClient client;
+    private String scanStatusUrl;
+
+    @Setup
+    public void setUp() throws IOException {
+        api = new FakeVdooApi(8 * 1024 * 1024, 1);
+        client = new VdooHttpClient(5000, 0, 20, 0, 24 * 60 * 60, gzip);
+        scanStatusUrl = api.getBaseUrl() + "/v3/images/0f3a9c2e-1b2d-4e5f-8a9b-112233445566/scan_status/";
+    }
+
+    @TearDown
+    public void tearDown() {
+        api.close();
+    }
+
+    @Benchmark
+    public ScanStatus bindScanStatus() throws IOException {
+        return SCAN_STATUS_READER.readValue(SCAN_STATUS);
+    }
+
+    @Benchmark
+    public PartDetails bindPartDetails() throws IOException {
+        return PART_DETAILS_READER.readValue(PART_DETAILS);
+    }
+
+    @Benchmark
+    public JsonNode readScanStatusTree() throws IOException {
+        return VdooHttpClient.getReader().readTree(SCAN_STATUS);
+    }
+
+    @Benchmark
+    public ScanStatus callScanStatus() throws IOException {
+        return client.call(scanStatusUrl, "GET", "token", null, ScanStatus.class);
+    }
+
+    @Benchmark
+    public JsonNode callScanStatusTree() throws IOException {
+        return client.call(scanStatusUrl, "GET", "token", null);
+    }
+}
@@ -0,0 +1,73 @@
+package com.vdoo.sdk;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * A whole multipart upload by VdooSDK.analyzeImage against FakeVdooApi: upload_request, then every part read from the
+ * image with positional FileChannel transfers and sent by the part uploaders, then finished. The loopback network
+ * leaves the reading of the parts, the HTTP client and the scheduling of the uploaders as the cost.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class UploadBenchmark {
+    private static final long PART_SIZE_BYTES = 8 * 1024 * 1024;
+
+    @Param({"16", "128"})
+    public int imageSizeMB;
+
+    // The max_concurrency returned by the API
+    @Param({"1", "4", "10"})
+    public int maxConcurrency;
+
+    private FakeVdooApi api;
+    private File image;
+
+    @Setup
+    public void setUp() throws IOException {
+        api = new FakeVdooApi(PART_SIZE_BYTES, maxConcurrency);
+
+        // Random bytes, so no file system can store the image sparsely
+        image = File.createTempFile("vdoo-benchmark", ".bin");
+        byte[] block = new byte[1024 * 1024];
+        Random random = new Random(42);
+        try (OutputStream out = Files.newOutputStream(image.toPath())) {
+            for (int i = 0; i < imageSizeMB; i++) {
+                random.nextBytes(block);
+                out.write(block);
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        api.close();
+        Files.deleteIfExists(image.toPath());
+    }
+
+    @Benchmark
+    public String upload() throws IOException {
+        return new VdooSDK().analyzeImage(api.getBaseUrl(), "1", image.getName(), image.getPath(), "token");
+    }
+}
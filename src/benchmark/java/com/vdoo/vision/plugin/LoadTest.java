@@ -0,0 +1,342 @@
+package com.vdoo.vision.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import com.vdoo.sdk.FakeVdooApi;
+import com.vdoo.sdk.ScanMetrics;
+import com.vdoo.sdk.ScanStatus;
+import com.vdoo.sdk.VdooHttpClient;
+import com.vdoo.sdk.VdooSDK;
+
+/*
+ * Runs 'scans' whole scans, 'concurrency' at a time, against FakeVdooApi started in-process, or against the API at
+ * --base-url (e.g. FakeVdooApi run as a server). Every scan does what a build step does on the controller and agent:
+ *   - uploads an image of 'image-mb' with VdooSDK.analyzeImage
+ *   - polls scan_status with ETags until the scan ended
+ *   - downloads the report like ScannerAction: the report parts 3 at a time, the paginated ones streamed page by
+ *     page with ScannerAction.ReportPageWriter into the part files of 'format', then indexed and aggregated
+ * and prints the throughput, the p50/p99 latencies of every phase, the peak heap and thread counts, and the failed
+ * scans. Options other than the ones below are passed to FakeVdooApi, see FakeVdooApi.parseOptions.
+ *   --scans 20 --concurrency 4 --image-mb 16 --format JSON --poll-ms 500 --base-url <url> --token <token> --metrics
+ */
+public final class LoadTest {
+    private static final String[] OBJECT_REPORT_PARTS = {"analysis_results", "highlighted_issues"};
+    private static final String[] PAGINATED_REPORT_PARTS = {
+        "software_components",
+        "hardware_components",
+        "cves",
+        "exposures",
+        "malicious_files",
+        "potential_zero_days/zero_days",
+        "potential_zero_days/weaknesses",
+    };
+
+    private int scans = 20;
+    private int concurrency = 4;
+    private int imageSizeMB = 16;
+    private ReportFormat format = ReportFormat.JSON;
+    private long pollMillis = 500;
+    private String baseUrl;
+    private String token = "token";
+    private boolean printMetrics;
+
+    private final List<Long> uploadNanos = Collections.synchronizedList(new ArrayList<>());
+    private final List<Long> waitNanos = Collections.synchronizedList(new ArrayList<>());
+    private final List<Long> downloadNanos = Collections.synchronizedList(new ArrayList<>());
+    private final List<Long> scanNanos = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger failedScans = new AtomicInteger();
+    private final AtomicLong reportEntries = new AtomicLong();
+    private final AtomicLong peakHeapBytes = new AtomicLong();
+
+    public static void main(String[] args) throws Exception {
+        LoadTest loadTest = new LoadTest();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--scans":
+                    loadTest.scans = Integer.parseInt(args[++i]);
+                    break;
+                case "--concurrency":
+                    loadTest.concurrency = Integer.parseInt(args[++i]);
+                    break;
+                case "--image-mb":
+                    loadTest.imageSizeMB = Integer.parseInt(args[++i]);
+                    break;
+                case "--format":
+                    loadTest.format = ReportFormat.valueOf(args[++i]);
+                    break;
+                case "--poll-ms":
+                    loadTest.pollMillis = Long.parseLong(args[++i]);
+                    break;
+                case "--base-url":
+                    loadTest.baseUrl = args[++i];
+                    break;
+                case "--token":
+                    loadTest.token = args[++i];
+                    break;
+                case "--metrics":
+                    loadTest.printMetrics = true;
+                    break;
+                default:
+                    // An option of FakeVdooApi, with its value
+                    i++;
+            }
+        }
+
+        if (loadTest.baseUrl != null) {
+            loadTest.run();
+            return;
+        }
+        try (FakeVdooApi api = new FakeVdooApi(FakeVdooApi.parseOptions(args, new FakeVdooApi.Options()))) {
+            loadTest.baseUrl = api.getBaseUrl();
+            loadTest.run();
+            System.out.println(String.format("Fake API: %d calls, %d failed and %d throttled on purpose",
+                    api.getCalls(), api.getFailedCalls(), api.getThrottledCalls()));
+        }
+    }
+
+    private void run() throws IOException, InterruptedException {
+        File workDirectory = Files.createTempDirectory("vdoo-load-test").toFile();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+
+        try {
+            // One image per worker, as concurrent uploads of a file would share its resume state
+            File[] images = new File[concurrency];
+            for (int i = 0; i < concurrency; i++) {
+                images[i] = writeImage(new File(workDirectory, "image-" + i + ".bin"), i);
+            }
+            AtomicInteger nextImage = new AtomicInteger();
+            ThreadLocal<File> workerImage = ThreadLocal.withInitial(() -> images[nextImage.getAndIncrement()]);
+
+            System.gc();
+            threads.resetPeakThreadCount();
+            sampler.scheduleAtFixedRate(
+                    () -> peakHeapBytes.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max),
+                    0, 50, TimeUnit.MILLISECONDS
+            );
+
+            long start = System.nanoTime();
+            List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < scans; i++) {
+                File reportDirectory = new File(workDirectory, "report-" + i);
+                results.add(workers.submit(() -> {
+                    scan(workerImage.get(), reportDirectory);
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                try {
+                    result.get();
+                } catch (ExecutionException e) {
+                    failedScans.incrementAndGet();
+                    System.err.println("Scan failed: " + e.getCause());
+                }
+            }
+            long elapsedNanos = System.nanoTime() - start;
+
+            report(elapsedNanos, threads.getPeakThreadCount());
+        } finally {
+            workers.shutdownNow();
+            sampler.shutdownNow();
+            delete(workDirectory);
+        }
+    }
+
+    private void scan(File image, File reportDirectory) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+
+        VdooSDK sdk = new VdooSDK();
+        String imageUuid;
+        try {
+            imageUuid = sdk.analyzeImage(baseUrl, "1", image.getName(), image.getPath(), token);
+        } finally {
+            sdk.getMetrics().mergeInto(ScanMetrics.get());
+        }
+        long uploaded = System.nanoTime();
+        uploadNanos.add(uploaded - start);
+
+        waitForEndStatus(imageUuid);
+        long ended = System.nanoTime();
+        waitNanos.add(ended - uploaded);
+
+        downloadReport(imageUuid, reportDirectory);
+        long end = System.nanoTime();
+        downloadNanos.add(end - ended);
+        scanNanos.add(end - start);
+
+        // The report of every scan is the same, keep the disk usage of a long run flat
+        delete(reportDirectory);
+    }
+
+    private void waitForEndStatus(String imageUuid) throws IOException, InterruptedException {
+        String url = baseUrl + "/v3/images/" + imageUuid + "/scan_status/";
+        String etag = null;
+        while (true) {
+            VdooHttpClient.ConditionalResponse<ScanStatus> status =
+                    VdooHttpClient.getDefault().getIfModified(url, token, etag, ScanStatus.class);
+            if (!status.isNotModified()) {
+                if (status.getValue().isFailure()) {
+                    throw new IOException("Scan " + imageUuid + " failed: " + status.getValue().getErrorCode());
+                }
+                if (status.getValue().isDone()) {
+                    return;
+                }
+            }
+            etag = status.getEtag();
+            Thread.sleep(pollMillis);
+        }
+    }
+
+    private void downloadReport(String imageUuid, File reportDirectory) throws IOException, InterruptedException {
+        if (!reportDirectory.mkdirs()) {
+            throw new IOException("Could not create " + reportDirectory);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(ScannerAction.DEFAULT_REPORT_DOWNLOAD_CONCURRENCY);
+        try {
+            List<Future<?>> parts = new ArrayList<>();
+            for (String partName : OBJECT_REPORT_PARTS) {
+                parts.add(executor.submit(() -> {
+                    JsonNode part = VdooHttpClient.getDefault()
+                            .call(baseUrl + "/v3/images/" + imageUuid + "/" + partName, "GET", token, null);
+                    Files.write(new File(reportDirectory, partName + ".json").toPath(),
+                            part.toString().getBytes(StandardCharsets.UTF_8));
+                    return null;
+                }));
+            }
+            for (String partName : PAGINATED_REPORT_PARTS) {
+                parts.add(executor.submit(() -> {
+                    downloadPaginatedPart(imageUuid, reportDirectory, partName);
+                    return null;
+                }));
+            }
+            for (Future<?> part : parts) {
+                try {
+                    part.get();
+                } catch (ExecutionException e) {
+                    throw new IOException(e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        ReportManifest.writeAggregatedReport(reportDirectory, format);
+    }
+
+    private void downloadPaginatedPart(String imageUuid, File reportDirectory, String partName) throws IOException {
+        String fileName = partName.replace("potential_zero_days/", "");
+        File partFile = new File(reportDirectory, format.getPartFileName(fileName));
+
+        try (JsonGenerator generator = format.createPartGenerator(partFile)) {
+            format.startPart(generator);
+            ScannerAction.ReportPageWriter pageWriter = new ScannerAction.ReportPageWriter(generator);
+            String nextPageUrl = baseUrl + "/v3/images/" + imageUuid + "/" + partName;
+            while (nextPageUrl != null) {
+                nextPageUrl = VdooHttpClient.getDefault().call(nextPageUrl, "GET", token, null, pageWriter);
+                generator.flush();
+            }
+            format.endPart(generator);
+            reportEntries.addAndGet(pageWriter.getEntries());
+        }
+
+        ReportIndex.write(reportDirectory, fileName, format);
+    }
+
+    private File writeImage(File image, int seed) throws IOException {
+        // Random bytes, so no file system can store the image sparsely
+        byte[] block = new byte[1024 * 1024];
+        Random random = new Random(seed);
+        try (OutputStream out = Files.newOutputStream(image.toPath())) {
+            for (int i = 0; i < imageSizeMB; i++) {
+                random.nextBytes(block);
+                out.write(block);
+            }
+        }
+        return image;
+    }
+
+    private void report(long elapsedNanos, int peakThreads) throws IOException {
+        int succeededScans = scans - failedScans.get();
+        double elapsedSeconds = elapsedNanos / 1e9;
+
+        System.out.println(String.format("%d scans, %d at a time, %d MB images, %s reports, against %s",
+                scans, concurrency, imageSizeMB, format, baseUrl));
+        System.out.println(String.format("Succeeded: %d, failed: %d, in %.1f s", succeededScans, failedScans.get(),
+                elapsedSeconds));
+        System.out.println(String.format("Throughput: %.1f scans/min, %.1f MB/s uploaded, %.0f report entries/s",
+                succeededScans * 60 / elapsedSeconds,
+                (double) succeededScans * imageSizeMB / elapsedSeconds,
+                reportEntries.get() / elapsedSeconds));
+        printLatencies("upload", uploadNanos);
+        printLatencies("wait", waitNanos);
+        printLatencies("download", downloadNanos);
+        printLatencies("scan", scanNanos);
+        System.out.println(String.format("Peak heap: %.1f MB, peak threads: %d",
+                peakHeapBytes.get() / (1024.0 * 1024.0), peakThreads));
+
+        if (printMetrics) {
+            Writer writer = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+            ScanMetrics.get().writePrometheus(writer);
+            writer.flush();
+        }
+    }
+
+    private static void printLatencies(String phase, List<Long> nanos) {
+        long[] sorted;
+        synchronized (nanos) {
+            sorted = nanos.stream().mapToLong(Long::longValue).toArray();
+        }
+        if (sorted.length == 0) {
+            return;
+        }
+        Arrays.sort(sorted);
+        System.out.println(String.format("  %-8s p50 %8.1f ms   p99 %8.1f ms   max %8.1f ms",
+                phase, percentile(sorted, 50) / 1e6, percentile(sorted, 99) / 1e6, sorted[sorted.length - 1] / 1e6));
+    }
+
+    // Nearest rank
+    private static long percentile(long[] sorted, int percent) {
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    private static void delete(File directory) throws IOException {
+        if (!directory.exists()) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(directory.toPath())) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.vdoo.vision.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * The report of a build with 'findings' CVEs saved in 'format', and:
+ *   - its indexing once it is downloaded (ReportIndex.write)
+ *   - pages of the report page, as served by ScannerAction.doFindings from the index
+ *   - all_findings.json, written when the report is saved (JSON) or streamed from the parts (compact formats)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ReportBenchmark {
+    private static final String[] SEVERITIES = {"Critical", "High", "Medium", "Low", "Info"};
+    private static final int PAGE_SIZE = 50;
+
+    @Param({"1000", "10000", "100000"})
+    public int findings;
+
+    @Param({"JSON", "GZIP_NDJSON"})
+    public String format;
+
+    private ReportFormat reportFormat;
+    private File reportDirectory;
+    private ReportIndex index;
+
+    @Setup
+    public void setUp() throws IOException {
+        reportFormat = ReportFormat.valueOf(format);
+        reportDirectory = Files.createTempDirectory("vdoo-benchmark").toFile();
+
+        writeObject("analysis_results.json", "{\"threat_level\": \"High\", \"firmware_name\": \"benchmark.bin\"}");
+        writeObject("highlighted_issues.json", "{\"exposures\": [], \"cves\": [], \"malicious_files\": []}");
+        for (String part : ReportIndex.INDEXED_PARTS) {
+            writePart(part, part.equals("cves") ? findings : 0);
+        }
+        if (!reportFormat.hasAggregatedReport()) {
+            ReportManifest.write(reportDirectory, reportFormat);
+        }
+
+        index = ReportIndex.write(reportDirectory, "cves", reportFormat);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(reportDirectory.toPath())) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    private void writeObject(String fileName, String json) throws IOException {
+        Files.write(new File(reportDirectory, fileName).toPath(), json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void writePart(String partName, int entries) throws IOException {
+        File partFile = new File(reportDirectory, reportFormat.getPartFileName(partName));
+        try (JsonGenerator generator = reportFormat.createPartGenerator(partFile)) {
+            reportFormat.startPart(generator);
+            for (int i = 0; i < entries; i++) {
+                generator.writeStartObject();
+                generator.writeStringField("cve_id", String.format("CVE-%d-%05d", 2000 + i % 21, i));
+                generator.writeStringField("severity", SEVERITIES[i % SEVERITIES.length]);
+                generator.writeNumberField("cvss", (i % 100) / 10.0);
+                generator.writeStringField("description", "A buffer overflow in the parsing of crafted packets "
+                        + "allows remote attackers to execute arbitrary code or cause a denial of service, entry "
+                        + i + ".");
+                generator.writeArrayFieldStart("affected_components");
+                generator.writeStartObject();
+                generator.writeStringField("name", "component-" + i % 300);
+                generator.writeStringField("version", "1." + i % 10 + "." + i % 7);
+                generator.writeEndObject();
+                generator.writeEndArray();
+                generator.writeEndObject();
+            }
+            reportFormat.endPart(generator);
+        }
+    }
+
+    @Benchmark
+    public ReportIndex indexPart() throws IOException {
+        return ReportIndex.write(reportDirectory, "cves", reportFormat);
+    }
+
+    @Benchmark
+    public ReportIndex loadIndex() throws IOException {
+        return ReportIndex.load(reportDirectory, "cves", reportFormat);
+    }
+
+    @Benchmark
+    public byte[][] firstPage() throws IOException {
+        return readPage(index.select(null, null, null, false), 0);
+    }
+
+    // Every other page of the report is read past, the worst case for a compressed part
+    @Benchmark
+    public byte[][] lastPage() throws IOException {
+        int[] selected = index.select(null, null, null, false);
+        return readPage(selected, Math.max(0, (selected.length - 1) / PAGE_SIZE));
+    }
+
+    @Benchmark
+    public byte[][] filteredSortedPage() throws IOException {
+        int[] selected = index.select("High", "cve-201", "key", true);
+        return readPage(selected, selected.length / PAGE_SIZE / 2);
+    }
+
+    private byte[][] readPage(int[] selected, int page) throws IOException {
+        int from = Math.min(selected.length, page * PAGE_SIZE);
+        int[] positions = Arrays.copyOfRange(selected, from, Math.min(selected.length, from + PAGE_SIZE));
+        try (InputStream part = reportFormat.openPart(
+                new File(reportDirectory, reportFormat.getPartFileName("cves")))) {
+            return index.readEntries(part, positions);
+        }
+    }
+
+    @Benchmark
+    public void writeAllFindings() throws IOException {
+        try (OutputStream out = new FileOutputStream(new File(reportDirectory, "all_findings.benchmark.json"))) {
+            ReportManifest.writeAllFindings(reportDirectory, out);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.vdoo.sdk;
+
+/*
+ * Additive increase / multiplicative decrease limit on the number of parts uploaded at the same time.
+ *
+ * The limit starts low and grows by one every time a full window of parts (as many parts as the current limit) was
+ * uploaded without the aggregate throughput dropping compared to the best window so far. Any failed attempt halves
+ * the limit, a throttling response (429 / 503) also resets the throughput baseline.
+ */
+class AdaptiveConcurrencyLimit {
+    private static final int INITIAL_LIMIT = 2;
+    // A window whose throughput is within this ratio of the best one still counts as an improvement
+    private static final double THROUGHPUT_TOLERANCE = 0.9;
+
+    private final int maxLimit;
+    private double limit;
+    private int inFlight;
+    private int peakLimit;
+
+    private long windowStart;
+    private long windowBytes;
+    private int windowParts;
+    private double bestThroughput;
+
+    AdaptiveConcurrencyLimit(int maxLimit) {
+        this.maxLimit = Math.max(1, maxLimit);
+        this.limit = Math.min(INITIAL_LIMIT, this.maxLimit);
+        this.peakLimit = (int) limit;
+        this.windowStart = System.nanoTime();
+    }
+
+    synchronized void acquire() throws InterruptedException {
+        while (inFlight >= (int) limit) {
+            wait();
+        }
+        inFlight++;
+    }
+
+    // Gives back a permit that was not used for an upload attempt
+    synchronized void release() {
+        inFlight--;
+        notifyAll();
+    }
+
+    synchronized void onSuccess(long bytes) {
+        inFlight--;
+        windowBytes += bytes;
+        windowParts++;
+
+        if (windowParts >= (int) limit) {
+            long now = System.nanoTime();
+            double throughput = windowBytes / (double) Math.max(1, now - windowStart);
+            if (throughput >= bestThroughput * THROUGHPUT_TOLERANCE) {
+                limit = Math.min(maxLimit, limit + 1);
+                peakLimit = Math.max(peakLimit, (int) limit);
+            }
+            bestThroughput = Math.max(bestThroughput, throughput);
+            startWindow(now);
+        }
+        notifyAll();
+    }
+
+    synchronized void onFailure(boolean throttled) {
+        inFlight--;
+        limit = Math.max(1, limit / 2);
+        if (throttled) {
+            bestThroughput = 0;
+        }
+        startWindow(System.nanoTime());
+        notifyAll();
+    }
+
+    synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    synchronized int getPeakLimit() {
+        return peakLimit;
+    }
+
+    private void startWindow(long now) {
+        windowStart = now;
+        windowBytes = 0;
+        windowParts = 0;
+    }
+}
@@ -0,0 +1,85 @@
+package com.vdoo.sdk;
+
+import java.io.InterruptedIOException;
+
+/*
+ * Token bucket limit on the bytes per second sent by part uploads. Tokens are added at the configured rate, up to a
+ * quarter of a second worth of bytes, so an idle upload can not send a long burst when it resumes.
+ *
+ * A caller takes the tokens for a chunk of the body before writing it. When the bucket is short, the tokens are
+ * reserved anyway and the caller sleeps until they would have been added. Reservations are served in order, so
+ * concurrent part uploaders share the rate evenly instead of being serialised behind each other.
+ */
+public final class BandwidthLimiter {
+    private static final double BURST_SECONDS = 0.25;
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    // Shared by all the uploads of the JVM, i.e. of the node they run on
+    private static final BandwidthLimiter JVM_LIMITER = new BandwidthLimiter(0);
+
+    private long bytesPerSecond;
+    private double tokens;
+    private long lastRefillNanos;
+
+    public BandwidthLimiter(long bytesPerSecond) {
+        setBytesPerSecond(bytesPerSecond);
+    }
+
+    /*
+     * The limit of all the uploads of the JVM, 0 for none until it is set.
+     */
+    public static BandwidthLimiter getJvmLimiter() {
+        return JVM_LIMITER;
+    }
+
+    // 0 for no limit
+    public synchronized void setBytesPerSecond(long bytesPerSecond) {
+        this.bytesPerSecond = Math.max(0, bytesPerSecond);
+        this.tokens = Math.min(tokens, burstBytes());
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    public synchronized long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    public synchronized boolean isLimited() {
+        return bytesPerSecond > 0;
+    }
+
+    /*
+     * Waits until 'bytes' may be sent. Returns the nanoseconds that were waited.
+     */
+    public long acquire(long bytes) throws InterruptedIOException {
+        long waitNanos = reserve(bytes);
+        if (waitNanos <= 0)
+            return 0;
+
+        try {
+            Thread.sleep(waitNanos / 1000000, (int) (waitNanos % 1000000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the upload bandwidth limit");
+        }
+        return waitNanos;
+    }
+
+    private synchronized long reserve(long bytes) {
+        if (bytesPerSecond <= 0)
+            return 0;
+
+        long now = System.nanoTime();
+        tokens = Math.min(burstBytes(), tokens + (now - lastRefillNanos) * (double) bytesPerSecond / NANOS_PER_SECOND);
+        lastRefillNanos = now;
+
+        // May go below zero, the debt is paid by this caller's wait and delays the callers after it
+        tokens -= bytes;
+        if (tokens >= 0)
+            return 0;
+        return (long) (-tokens * NANOS_PER_SECOND / bytesPerSecond);
+    }
+
+    private double burstBytes() {
+        return bytesPerSecond * BURST_SECONDS;
+    }
+}
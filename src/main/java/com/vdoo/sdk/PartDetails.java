@@ -0,0 +1,41 @@
+package com.vdoo.sdk;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/*
+ * Response of /v3/images/{uuid}/part/{number}/, describing which bytes of the image to send and where to.
+ */
+public class PartDetails {
+    private final long startOffsetBytes;
+    private final long partLengthBytes;
+    private final String preparedRequestUrl;
+    private final String preparedRequestMethod;
+
+    @JsonCreator
+    public PartDetails(@JsonProperty(value = "start_offset_bytes", required = true) long startOffsetBytes,
+                       @JsonProperty(value = "part_length_bytes", required = true) long partLengthBytes,
+                       @JsonProperty("prepared_request_URL") String preparedRequestUrl,
+                       @JsonProperty("prepared_request_method") String preparedRequestMethod) {
+        this.startOffsetBytes = startOffsetBytes;
+        this.partLengthBytes = partLengthBytes;
+        this.preparedRequestUrl = preparedRequestUrl;
+        this.preparedRequestMethod = preparedRequestMethod;
+    }
+
+    public long getStartOffsetBytes() {
+        return startOffsetBytes;
+    }
+
+    public long getPartLengthBytes() {
+        return partLengthBytes;
+    }
+
+    public String getPreparedRequestUrl() {
+        return preparedRequestUrl;
+    }
+
+    public String getPreparedRequestMethod() {
+        return preparedRequestMethod;
+    }
+}
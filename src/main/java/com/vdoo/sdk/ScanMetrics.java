@@ -0,0 +1,366 @@
+package com.vdoo.sdk;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.Writer;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/*
+ * Counters and histograms of the calls made to the Vdoo API and of the work done with their results. Recording a
+ * sample only adds to LongAdders, so it is cheap enough for every API call and every part.
+ *
+ * The controller keeps one instance for the whole JVM (get()). A VdooSDK records into its own instance, whose
+ * snapshot() the plugin sends back from the agent after the upload, failed or not, and merges into the one of the
+ * controller. The metrics are cumulative since the start of Jenkins, and can be written as JSON or in the Prometheus
+ * text format.
+ */
+public final class ScanMetrics {
+
+    private static final double[] SECONDS_BUCKETS = {
+        0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 120
+    };
+    private static final double[] BYTES_PER_SECOND_BUCKETS = {
+        64 * 1024, 256 * 1024, 1024 * 1024, 4 * 1024 * 1024, 16 * 1024 * 1024, 64 * 1024 * 1024, 256 * 1024 * 1024
+    };
+
+    public enum Metric {
+        API_CALL_SECONDS("vdoo_api_call_seconds", "Latency of the calls to the Vdoo API", "endpoint",
+            SECONDS_BUCKETS),
+        API_CALL_ERRORS("vdoo_api_call_errors_total", "Calls to the Vdoo API that failed", "endpoint", null),
+        UPLOAD_PART_SECONDS("vdoo_upload_part_seconds", "Time to upload an image part, from its details to finished",
+            null, SECONDS_BUCKETS),
+        UPLOAD_PART_BYTES_PER_SECOND("vdoo_upload_part_bytes_per_second", "Rate an image part was uploaded at",
+            null, BYTES_PER_SECOND_BUCKETS),
+        UPLOAD_BYTES("vdoo_upload_bytes_total", "Bytes of image parts uploaded", null, null),
+        UPLOAD_PART_RETRIES("vdoo_upload_part_retries_total", "Attempts to upload an image part that were retried",
+            null, null),
+        STATUS_POLLS("vdoo_status_polls_total", "Polls of the scan status, by whether the status changed", "result",
+            null),
+        REPORT_PAGE_SECONDS("vdoo_report_page_fetch_seconds", "Time to fetch a report page and write it to its part",
+            "part", SECONDS_BUCKETS),
+        ARTIFACT_BYTES("vdoo_artifact_bytes_written_total", "Bytes of report artifacts written", "artifact", null);
+
+        private final String name;
+        private final String help;
+        private final String labelName;
+        private final double[] buckets;
+
+        Metric(String name, String help, String labelName, double[] buckets) {
+            this.name = name;
+            this.help = help;
+            this.labelName = labelName;
+            this.buckets = buckets;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        boolean isHistogram() {
+            return buckets != null;
+        }
+    }
+
+    private static final ScanMetrics JVM_METRICS = new ScanMetrics();
+
+    // By metric, then by label value ("" for metrics without a label)
+    private final ConcurrentMap<Metric, ConcurrentMap<String, Series>> series = new ConcurrentHashMap<>();
+
+    /*
+     * The metrics of this JVM, i.e. of the Jenkins controller.
+     */
+    public static ScanMetrics get() {
+        return JVM_METRICS;
+    }
+
+    public void increment(Metric metric, String label) {
+        add(metric, label, 1);
+    }
+
+    public void add(Metric metric, String label, double amount) {
+        series(metric, label).add(amount);
+    }
+
+    public void observe(Metric metric, String label, double value) {
+        series(metric, label).observe(metric.buckets, value);
+    }
+
+    // For the latency metrics, in seconds
+    public void observeNanos(Metric metric, String label, long nanos) {
+        observe(metric, label, nanos / 1e9);
+    }
+
+    public interface ApiCall<T> {
+        T call() throws IOException;
+    }
+
+    /*
+     * Makes a call to the API, and records its latency, and whether it failed, under the endpoint of the url.
+     */
+    public <T> T timed(String urlString, ApiCall<T> call) throws IOException {
+        String endpoint = endpointOf(urlString);
+        long start = System.nanoTime();
+        try {
+            return call.call();
+        } catch (IOException e) {
+            increment(Metric.API_CALL_ERRORS, endpoint);
+            throw e;
+        } finally {
+            observeNanos(Metric.API_CALL_SECONDS, endpoint, System.nanoTime() - start);
+        }
+    }
+
+    private Series series(Metric metric, String label) {
+        return series
+            .computeIfAbsent(metric, key -> new ConcurrentHashMap<>())
+            .computeIfAbsent(label == null ? "" : label, key -> new Series(metric.buckets));
+    }
+
+    /*
+     * Adds all the samples of these metrics to 'target', e.g. the metrics of an upload to the ones of the JVM.
+     */
+    public void mergeInto(ScanMetrics target) {
+        snapshot().mergeInto(target);
+    }
+
+    /*
+     * The samples recorded so far, as plain values, so they can be sent from an agent to the controller.
+     */
+    public Snapshot snapshot() {
+        Map<Metric, Map<String, SeriesSnapshot>> values = new HashMap<>();
+        for (Map.Entry<Metric, ConcurrentMap<String, Series>> metric : series.entrySet()) {
+            Map<String, SeriesSnapshot> labelled = new HashMap<>();
+            for (Map.Entry<String, Series> entry : metric.getValue().entrySet()) {
+                labelled.put(entry.getKey(), entry.getValue().snapshot());
+            }
+            values.put(metric.getKey(), labelled);
+        }
+        return new Snapshot(values);
+    }
+
+    public static final class Snapshot implements Serializable {
+        private final Map<Metric, Map<String, SeriesSnapshot>> series;
+
+        private Snapshot(Map<Metric, Map<String, SeriesSnapshot>> series) {
+            this.series = series;
+        }
+
+        public void mergeInto(ScanMetrics target) {
+            for (Map.Entry<Metric, Map<String, SeriesSnapshot>> metric : series.entrySet()) {
+                for (Map.Entry<String, SeriesSnapshot> labelled : metric.getValue().entrySet()) {
+                    target.series(metric.getKey(), labelled.getKey()).merge(labelled.getValue());
+                }
+            }
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    private static final class SeriesSnapshot implements Serializable {
+        private final long[] buckets;
+        private final long count;
+        private final double sum;
+
+        SeriesSnapshot(long[] buckets, long count, double sum) {
+            this.buckets = buckets;
+            this.count = count;
+            this.sum = sum;
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    /*
+     * The label of the endpoint of an API url: its path, with the ids replaced, so all the calls to the same endpoint
+     * share a label. e.g. "/v3/images/{id}/part/{n}/".
+     */
+    public static String endpointOf(String urlString) {
+        String path;
+        try {
+            path = new URI(urlString).getRawPath();
+        } catch (URISyntaxException e) {
+            path = null;
+        }
+        if (path == null || path.equals("")) {
+            return "other";
+        }
+
+        String[] segments = path.split("/", -1);
+        for (int i = 0; i < segments.length; i++) {
+            if (segments[i].matches("\\d+")) {
+                segments[i] = "{n}";
+            } else if (segments[i].matches("[0-9A-Fa-f-]{16,}")) {
+                segments[i] = "{id}";
+            }
+        }
+        return String.join("/", segments);
+    }
+
+    /*
+     * Writes the metrics as a JSON object, by metric name:
+     *   {"vdoo_api_call_seconds": {"type": "histogram", "help": "...", "label": "endpoint", "series": [
+     *     {"label": "/v3/images/{id}/scan_status/", "count": 12, "sum": 0.84, "buckets": {"0.005": 0, ..., "+Inf": 12}}
+     *   ]}, ...}
+     * The buckets are cumulative, as in the Prometheus format.
+     */
+    public void writeJson(JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        for (Metric metric : Metric.values()) {
+            Map<String, Series> labelled = sorted(metric);
+            if (labelled.isEmpty()) {
+                continue;
+            }
+
+            generator.writeObjectFieldStart(metric.name);
+            generator.writeStringField("type", metric.isHistogram() ? "histogram" : "counter");
+            generator.writeStringField("help", metric.help);
+            if (metric.labelName != null) {
+                generator.writeStringField("label", metric.labelName);
+            }
+            generator.writeArrayFieldStart("series");
+            for (Map.Entry<String, Series> entry : labelled.entrySet()) {
+                Series value = entry.getValue();
+                generator.writeStartObject();
+                if (metric.labelName != null) {
+                    generator.writeStringField("label", entry.getKey());
+                }
+                if (metric.isHistogram()) {
+                    generator.writeNumberField("count", value.count.sum());
+                    generator.writeNumberField("sum", value.sum.sum());
+                    generator.writeObjectFieldStart("buckets");
+                    long cumulative = 0;
+                    for (int i = 0; i < metric.buckets.length; i++) {
+                        cumulative += value.buckets[i].sum();
+                        generator.writeNumberField(formatBound(metric.buckets[i]), cumulative);
+                    }
+                    generator.writeNumberField("+Inf", value.count.sum());
+                    generator.writeEndObject();
+                } else {
+                    generator.writeNumberField("value", value.sum.sum());
+                }
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+        generator.writeEndObject();
+    }
+
+    /*
+     * Writes the metrics in the Prometheus text exposition format (version 0.0.4).
+     */
+    public void writePrometheus(Writer out) throws IOException {
+        for (Metric metric : Metric.values()) {
+            Map<String, Series> labelled = sorted(metric);
+            if (labelled.isEmpty()) {
+                continue;
+            }
+
+            out.write("# HELP " + metric.name + " " + metric.help + "\n");
+            out.write("# TYPE " + metric.name + " " + (metric.isHistogram() ? "histogram" : "counter") + "\n");
+            for (Map.Entry<String, Series> entry : labelled.entrySet()) {
+                Series value = entry.getValue();
+                String label = metric.labelName == null ? ""
+                    : metric.labelName + "=\"" + escapeLabel(entry.getKey()) + "\"";
+
+                if (!metric.isHistogram()) {
+                    out.write(metric.name + braces(label) + " " + formatValue(value.sum.sum()) + "\n");
+                    continue;
+                }
+
+                long cumulative = 0;
+                String separator = label.equals("") ? "" : label + ",";
+                for (int i = 0; i < metric.buckets.length; i++) {
+                    cumulative += value.buckets[i].sum();
+                    out.write(metric.name + "_bucket{" + separator + "le=\"" + formatBound(metric.buckets[i]) + "\"} "
+                        + cumulative + "\n");
+                }
+                out.write(metric.name + "_bucket{" + separator + "le=\"+Inf\"} " + value.count.sum() + "\n");
+                out.write(metric.name + "_sum" + braces(label) + " " + formatValue(value.sum.sum()) + "\n");
+                out.write(metric.name + "_count" + braces(label) + " " + value.count.sum() + "\n");
+            }
+        }
+    }
+
+    private Map<String, Series> sorted(Metric metric) {
+        Map<String, Series> labelled = series.get(metric);
+        return labelled == null ? new TreeMap<>() : new TreeMap<>(labelled);
+    }
+
+    private static String braces(String label) {
+        return label.equals("") ? "" : "{" + label + "}";
+    }
+
+    private static String escapeLabel(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static String formatBound(double bound) {
+        return bound == Math.rint(bound) ? String.valueOf((long) bound) : String.valueOf(bound);
+    }
+
+    private static String formatValue(double value) {
+        return value == Math.rint(value) && Math.abs(value) < 1e15
+            ? String.valueOf((long) value)
+            : String.format(Locale.ROOT, "%.6f", value);
+    }
+
+    /*
+     * The samples of a metric with one label value. A counter only uses 'sum'.
+     */
+    private static final class Series {
+        private final LongAdder[] buckets;
+        private final LongAdder count = new LongAdder();
+        private final DoubleAdder sum = new DoubleAdder();
+
+        Series(double[] bounds) {
+            buckets = new LongAdder[bounds == null ? 0 : bounds.length];
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void add(double amount) {
+            sum.add(amount);
+        }
+
+        void observe(double[] bounds, double value) {
+            // Samples above the last bound are only in the count, i.e. the +Inf bucket
+            for (int i = 0; i < bounds.length; i++) {
+                if (value <= bounds[i]) {
+                    buckets[i].increment();
+                    break;
+                }
+            }
+            count.increment();
+            sum.add(value);
+        }
+
+        SeriesSnapshot snapshot() {
+            long[] bucketCounts = new long[buckets.length];
+            for (int i = 0; i < buckets.length; i++) {
+                bucketCounts[i] = buckets[i].sum();
+            }
+            return new SeriesSnapshot(bucketCounts, count.sum(), sum.sum());
+        }
+
+        void merge(SeriesSnapshot other) {
+            for (int i = 0; i < buckets.length && i < other.buckets.length; i++) {
+                buckets[i].add(other.buckets[i]);
+            }
+            count.add(other.count);
+            sum.add(other.sum);
+        }
+    }
+}
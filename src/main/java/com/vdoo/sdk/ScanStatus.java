@@ -0,0 +1,73 @@
+package com.vdoo.sdk;
+
+import java.io.Serializable;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/*
+ * Response of /v3/images/{uuid}/scan_status/, reduced to the current analysis stage.
+ */
+public class ScanStatus implements Serializable {
+    public static final String SUCCESS = "Success";
+    public static final String FAILURE = "Failure";
+
+    private final String name;
+    private final String errorCode;
+
+    public ScanStatus(String name, String errorCode) {
+        this.name = name;
+        this.errorCode = errorCode;
+    }
+
+    @JsonCreator
+    static ScanStatus fromResponse(@JsonProperty(value = "analysis_status", required = true) AnalysisStatus status) {
+        if (status == null || status.current == null)
+            throw new IllegalArgumentException("analysis_status.current is missing");
+        return new ScanStatus(status.current.name, status.current.errorCode);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // Only set when the scan failed
+    public String getErrorCode() {
+        return errorCode;
+    }
+
+    public boolean isSuccess() {
+        return SUCCESS.equals(name);
+    }
+
+    public boolean isFailure() {
+        return FAILURE.equals(name);
+    }
+
+    public boolean isDone() {
+        return isSuccess() || isFailure();
+    }
+
+    static class AnalysisStatus {
+        final Stage current;
+
+        @JsonCreator
+        AnalysisStatus(@JsonProperty(value = "current", required = true) Stage current) {
+            this.current = current;
+        }
+    }
+
+    static class Stage {
+        final String name;
+        final String errorCode;
+
+        @JsonCreator
+        Stage(@JsonProperty(value = "name", required = true) String name,
+              @JsonProperty("error_code") String errorCode) {
+            this.name = name;
+            this.errorCode = errorCode;
+        }
+    }
+
+    private static final long serialVersionUID = 1L;
+}
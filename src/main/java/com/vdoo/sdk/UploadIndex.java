@@ -0,0 +1,151 @@
+package com.vdoo.sdk;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * Local, persistent index of images that were already uploaded, so that an identical image is not uploaded again.
+ *
+ * Entries map (base url, artifact id, SHA-256 of the image) to the image UUID the server assigned to it. They are kept
+ * in a small text file, one entry per line, most recent last, and at most MAX_ENTRIES of them are kept. The file is
+ * locked while it is read or rewritten, so several builds on the same machine can share it.
+ */
+public class UploadIndex {
+    private static final int MAX_ENTRIES = 1000;
+    private static final int HASH_BUFFER_SIZE = 1024 * 1024;
+
+    // FileLock is held per JVM, threads of the same JVM are serialised here first
+    private static final Object JVM_LOCK = new Object();
+
+    private final File indexFile;
+
+    public UploadIndex(File indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    public static File getDefaultFile() {
+        return new File(System.getProperty("user.home"), ".vdoo" + File.separator + "upload-index");
+    }
+
+    public File getIndexFile() {
+        return indexFile;
+    }
+
+    /*
+     * Hex encoded SHA-256 of everything in the channel, read sequentially with positional reads.
+     */
+    public static String sha256(FileChannel fileChannel) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(HASH_BUFFER_SIZE);
+        long position = 0;
+        int read;
+        while ((read = fileChannel.read(buffer, position)) != -1) {
+            position += read;
+            buffer.flip();
+            digest.update(buffer);
+            buffer.clear();
+        }
+
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    // Returns the image UUID recorded for this image, or null
+    public String lookup(String baseUrl, String artifactId, String sha256) throws IOException {
+        synchronized (JVM_LOCK) {
+            try (FileChannel lockChannel = openLockFile(); FileLock ignored = lockChannel.lock()) {
+                return read().get(key(baseUrl, artifactId, sha256));
+            }
+        }
+    }
+
+    public void record(String baseUrl, String artifactId, String sha256, String imageUuid) throws IOException {
+        synchronized (JVM_LOCK) {
+            try (FileChannel lockChannel = openLockFile(); FileLock ignored = lockChannel.lock()) {
+                Map<String, String> entries = read();
+                String key = key(baseUrl, artifactId, sha256);
+                // Re-inserting moves the entry to the end, so the oldest entries are the ones dropped
+                entries.remove(key);
+                entries.put(key, imageUuid);
+
+                Iterator<String> oldest = entries.keySet().iterator();
+                while (entries.size() > MAX_ENTRIES) {
+                    oldest.next();
+                    oldest.remove();
+                }
+                write(entries);
+            }
+        }
+    }
+
+    public void remove(String baseUrl, String artifactId, String sha256) throws IOException {
+        synchronized (JVM_LOCK) {
+            try (FileChannel lockChannel = openLockFile(); FileLock ignored = lockChannel.lock()) {
+                Map<String, String> entries = read();
+                if (entries.remove(key(baseUrl, artifactId, sha256)) != null) {
+                    write(entries);
+                }
+            }
+        }
+    }
+
+    private static String key(String baseUrl, String artifactId, String sha256) {
+        return sha256 + " " + artifactId + " " + baseUrl;
+    }
+
+    private FileChannel openLockFile() throws IOException {
+        File lockFile = new File(indexFile.getPath() + ".lock");
+        Files.createDirectories(lockFile.getAbsoluteFile().getParentFile().toPath());
+        return FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+
+    // Line format: "<sha256> <artifact id> <base url> <image uuid>"
+    private Map<String, String> read() throws IOException {
+        Map<String, String> entries = new LinkedHashMap<>();
+        if (!indexFile.exists()) {
+            return entries;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(indexFile.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int lastSpace = line.lastIndexOf(' ');
+                if (lastSpace <= 0) {
+                    continue;
+                }
+                entries.put(line.substring(0, lastSpace), line.substring(lastSpace + 1));
+            }
+        }
+        return entries;
+    }
+
+    private void write(Map<String, String> entries) throws IOException {
+        Path target = indexFile.toPath();
+        Path temp = Files.createTempFile(target.toAbsolutePath().getParent(), target.getFileName().toString(), ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                writer.write(entry.getKey() + " " + entry.getValue());
+                writer.newLine();
+            }
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
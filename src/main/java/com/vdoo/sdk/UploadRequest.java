@@ -0,0 +1,34 @@
+package com.vdoo.sdk;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/*
+ * Response of /v3/images/upload_request/.
+ */
+public class UploadRequest {
+    private final String imageUuid;
+    private final int totalParts;
+    private final int maxConcurrency;
+
+    @JsonCreator
+    public UploadRequest(@JsonProperty(value = "image_uuid", required = true) String imageUuid,
+                         @JsonProperty(value = "total_parts", required = true) int totalParts,
+                         @JsonProperty(value = "max_concurrency", required = true) int maxConcurrency) {
+        this.imageUuid = imageUuid;
+        this.totalParts = totalParts;
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    public String getImageUuid() {
+        return imageUuid;
+    }
+
+    public int getTotalParts() {
+        return totalParts;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+}
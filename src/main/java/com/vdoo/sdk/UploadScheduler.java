@@ -0,0 +1,49 @@
+package com.vdoo.sdk;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Runs the part uploaders of all the uploads of the JVM on one shared pool of named daemon threads, instead of a pool
+ * per upload. Threads are started when uploads need them and stop after a minute without work, so uploads leave no
+ * threads behind. How many parts an upload sends at once is bounded by the upload, see VdooSDK.
+ */
+public final class UploadScheduler {
+    private static final long IDLE_SECONDS = 60;
+
+    private static final UploadScheduler INSTANCE = new UploadScheduler();
+
+    private final AtomicInteger threadNumber = new AtomicInteger();
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+        0, Integer.MAX_VALUE, IDLE_SECONDS, TimeUnit.SECONDS, new SynchronousQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "VdooSDK upload worker " + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    private UploadScheduler() {}
+
+    public static UploadScheduler get() {
+        return INSTANCE;
+    }
+
+    <T> Future<T> submit(Callable<T> task) {
+        return executor.submit(task);
+    }
+
+    // Threads currently uploading parts, of all the uploads of the JVM
+    public int getActiveWorkers() {
+        return executor.getActiveCount();
+    }
+
+    /*
+     * Stops the workers, interrupting the uploads that are still running. Only meant for the shutdown of the JVM.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,143 @@
+package com.vdoo.sdk;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.BitSet;
+import java.util.Properties;
+
+/*
+ * Progress of a multipart upload, persisted next to the uploaded image so that an upload interrupted by an agent
+ * disconnect or an aborted build can be resumed by the next attempt, sending only the parts that are missing.
+ *
+ * The state only applies to the exact same file (size and modification time) uploaded to the same artifact on the
+ * same server. It is rewritten after every finished part and deleted once the upload is finished.
+ */
+class UploadState {
+    static final String FILE_SUFFIX = ".vdoo-upload";
+
+    private final File stateFile;
+    private final String baseUrl;
+    private final String artifactId;
+    private final long fileSize;
+    private final long lastModified;
+    private final String imageUuid;
+    private final int totalParts;
+    private final int maxConcurrency;
+    private final BitSet completedParts;
+
+    UploadState(File stateFile, String baseUrl, String artifactId, long fileSize, long lastModified,
+                String imageUuid, int totalParts, int maxConcurrency) {
+        this(stateFile, baseUrl, artifactId, fileSize, lastModified, imageUuid, totalParts, maxConcurrency,
+            new BitSet(totalParts + 1));
+    }
+
+    private UploadState(File stateFile, String baseUrl, String artifactId, long fileSize, long lastModified,
+                        String imageUuid, int totalParts, int maxConcurrency, BitSet completedParts) {
+        this.stateFile = stateFile;
+        this.baseUrl = baseUrl;
+        this.artifactId = artifactId;
+        this.fileSize = fileSize;
+        this.lastModified = lastModified;
+        this.imageUuid = imageUuid;
+        this.totalParts = totalParts;
+        this.maxConcurrency = maxConcurrency;
+        this.completedParts = completedParts;
+    }
+
+    static File stateFileFor(String imageFile) {
+        return new File(imageFile + FILE_SUFFIX);
+    }
+
+    /*
+     * Returns the persisted state if it belongs to this very upload, or null if there is nothing to resume.
+     */
+    static UploadState load(File stateFile, String baseUrl, String artifactId, long fileSize, long lastModified) {
+        if (!stateFile.isFile()) {
+            return null;
+        }
+
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(stateFile.toPath(), StandardCharsets.UTF_8)) {
+            properties.load(reader);
+
+            if (!baseUrl.equals(properties.getProperty("base_url"))
+                    || !artifactId.equals(properties.getProperty("artifact_id"))
+                    || fileSize != Long.parseLong(properties.getProperty("file_size"))
+                    || lastModified != Long.parseLong(properties.getProperty("last_modified"))) {
+                return null;
+            }
+
+            int totalParts = Integer.parseInt(properties.getProperty("total_parts"));
+            BitSet completedParts = new BitSet(totalParts + 1);
+            for (String part : properties.getProperty("completed_parts", "").split(",")) {
+                if (!part.isEmpty()) {
+                    completedParts.set(Integer.parseInt(part));
+                }
+            }
+
+            return new UploadState(stateFile, baseUrl, artifactId, fileSize, lastModified,
+                properties.getProperty("image_uuid"), totalParts,
+                Integer.parseInt(properties.getProperty("max_concurrency")), completedParts);
+        } catch (IOException | RuntimeException e) {
+            // Unreadable or from an older format, start over
+            return null;
+        }
+    }
+
+    String getImageUuid() {
+        return imageUuid;
+    }
+
+    int getTotalParts() {
+        return totalParts;
+    }
+
+    int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    synchronized boolean isCompleted(int partNumber) {
+        return completedParts.get(partNumber);
+    }
+
+    synchronized int getCompletedCount() {
+        return completedParts.cardinality();
+    }
+
+    synchronized void markCompleted(int partNumber) throws IOException {
+        completedParts.set(partNumber);
+        save();
+    }
+
+    synchronized void save() throws IOException {
+        StringBuilder parts = new StringBuilder();
+        for (int part = completedParts.nextSetBit(0); part >= 0; part = completedParts.nextSetBit(part + 1)) {
+            if (parts.length() > 0) {
+                parts.append(',');
+            }
+            parts.append(part);
+        }
+
+        Properties properties = new Properties();
+        properties.setProperty("base_url", baseUrl);
+        properties.setProperty("artifact_id", artifactId);
+        properties.setProperty("file_size", String.valueOf(fileSize));
+        properties.setProperty("last_modified", String.valueOf(lastModified));
+        properties.setProperty("image_uuid", imageUuid);
+        properties.setProperty("total_parts", String.valueOf(totalParts));
+        properties.setProperty("max_concurrency", String.valueOf(maxConcurrency));
+        properties.setProperty("completed_parts", parts.toString());
+
+        Path target = stateFile.toPath();
+        Path temp = Files.createTempFile(target.toAbsolutePath().getParent(), target.getFileName().toString(), ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            properties.store(writer, "Vdoo upload in progress, used to resume it");
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    void delete() {
+        stateFile.delete();
+    }
+}
@@ -0,0 +1,115 @@
+package com.vdoo.sdk;
+
+import java.io.Serializable;
+
+/*
+ * Timing of a single multipart upload, used to see how well the part uploaders were kept busy.
+ * A worker's utilisation is the share of the upload's wall-clock time it spent uploading parts.
+ */
+public class UploadStatistics implements Serializable {
+    private final int totalParts;
+    private final long elapsedNanos;
+    private final long[] workerBusyNanos;
+    private final int[] workerParts;
+    private final int peakConcurrency;
+    private final int resumedParts;
+    private final long uploadedBytes;
+    private final long maxBytesPerSecond;
+    private final long maxJvmBytesPerSecond;
+
+    public UploadStatistics(int totalParts, long elapsedNanos, long[] workerBusyNanos, int[] workerParts,
+                            int peakConcurrency, int resumedParts, long uploadedBytes, long maxBytesPerSecond,
+                            long maxJvmBytesPerSecond) {
+        this.totalParts = totalParts;
+        this.elapsedNanos = elapsedNanos;
+        this.workerBusyNanos = workerBusyNanos.clone();
+        this.workerParts = workerParts.clone();
+        this.peakConcurrency = peakConcurrency;
+        this.resumedParts = resumedParts;
+        this.uploadedBytes = uploadedBytes;
+        this.maxBytesPerSecond = maxBytesPerSecond;
+        this.maxJvmBytesPerSecond = maxJvmBytesPerSecond;
+    }
+
+    // Parts sent by this upload, not counting the ones already sent by the upload it resumed
+    public int getTotalParts() {
+        return totalParts;
+    }
+
+    // Parts that were already sent by an earlier, interrupted attempt of the same upload
+    public int getResumedParts() {
+        return resumedParts;
+    }
+
+    public int getWorkerCount() {
+        return workerBusyNanos.length;
+    }
+
+    // Highest number of parts the adaptive limit allowed in flight at once
+    public int getPeakConcurrency() {
+        return peakConcurrency;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedNanos / 1000000;
+    }
+
+    // Bytes of the parts sent by this upload
+    public long getUploadedBytes() {
+        return uploadedBytes;
+    }
+
+    // Average rate the parts were sent at, over the whole upload
+    public double getBytesPerSecond() {
+        if (elapsedNanos <= 0) {
+            return 0;
+        }
+        return uploadedBytes * 1e9 / elapsedNanos;
+    }
+
+    // Bandwidth limit of this upload, 0 if it had none
+    public long getMaxBytesPerSecond() {
+        return maxBytesPerSecond;
+    }
+
+    // Bandwidth limit of all the uploads of the JVM when the upload ended, 0 if there was none
+    public long getMaxJvmBytesPerSecond() {
+        return maxJvmBytesPerSecond;
+    }
+
+    public int getWorkerParts(int worker) {
+        return workerParts[worker];
+    }
+
+    public double getWorkerUtilisation(int worker) {
+        if (elapsedNanos <= 0) {
+            return 0;
+        }
+        return Math.min(1.0, (double) workerBusyNanos[worker] / elapsedNanos);
+    }
+
+    public double getAverageUtilisation() {
+        if (workerBusyNanos.length == 0) {
+            return 0;
+        }
+        double total = 0;
+        for (int i = 0; i < workerBusyNanos.length; i++) {
+            total += getWorkerUtilisation(i);
+        }
+        return total / workerBusyNanos.length;
+    }
+
+    // e.g. "92% (4 parts), 88% (3 parts)"
+    public String formatWorkerUtilisation() {
+        StringBuilder formatted = new StringBuilder();
+        for (int i = 0; i < workerBusyNanos.length; i++) {
+            if (i > 0) {
+                formatted.append(", ");
+            }
+            formatted.append(String.format("%d%% (%d parts)", Math.round(getWorkerUtilisation(i) * 100), workerParts[i]));
+        }
+        return formatted.toString();
+    }
+
+    private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,50 @@
+package com.vdoo.sdk;
+
+import java.io.IOException;
+
+/*
+ * Raised when a call to the Vdoo API (or to a prepared upload URL) does not return a successful response.
+ * statusCode is 0 when the failure happened before a response was received, or is the status of a successful response
+ * whose body could not be decoded.
+ */
+public class VdooApiException extends IOException {
+    private final int statusCode;
+    private final String responseBody;
+    private final long retryAfterMillis;
+
+    public VdooApiException(int statusCode, String message) {
+        this(statusCode, message, null);
+    }
+
+    public VdooApiException(int statusCode, String message, String responseBody) {
+        this(statusCode, message, responseBody, -1);
+    }
+
+    public VdooApiException(int statusCode, String message, String responseBody, long retryAfterMillis) {
+        super(message);
+        this.statusCode = statusCode;
+        this.responseBody = responseBody;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    // The body of the error response, null if there was none
+    public String getResponseBody() {
+        return responseBody;
+    }
+
+    // How long the server asked to wait before calling again (Retry-After), -1 if it did not
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+
+    // Whether the call can succeed if it is made again later: the server is overloaded or throttles this client
+    public boolean isRetryable() {
+        return statusCode == 429 || statusCode == 503;
+    }
+
+    private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,415 @@
+package com.vdoo.sdk;
+
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.zip.GZIPInputStream;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.node.MissingNode;
+
+/*
+ * HTTP client shared by VdooSDK and the Jenkins plugin for every call made to the Vdoo API from this JVM.
+ *
+ * Connections are kept alive by the JDK keep-alive cache as long as every response body is fully read and closed,
+ * which this client always does. All HTTPS connections use the same SSLSocketFactory, so both the pooled sockets and
+ * the TLS sessions of the shared SSLContext are reused between calls. Responses are requested gzip compressed and
+ * decoded as a stream by a single, thread safe ObjectReader.
+ *
+ * The defaults can be tuned with the following system properties (prefixed with "com.vdoo.sdk.VdooHttpClient."):
+ *   connectTimeout          - connect timeout in milliseconds (default 5000)
+ *   readTimeout             - read timeout in milliseconds, 0 for none (default 0)
+ *   maxConnectionsPerHost   - maximal number of requests in flight to a single host (default 20)
+ *   sslSessionCacheSize     - number of cached TLS sessions, 0 for unlimited (default 0)
+ *   sslSessionTimeout       - lifetime of a cached TLS session in seconds (default 86400)
+ *   gzip                    - whether to ask for gzip compressed responses (default true)
+ * Note that the JDK keeps at most 'http.maxConnections' (default 5) idle connections per host, raise it along with
+ * maxConnectionsPerHost.
+ */
+public class VdooHttpClient {
+
+    private static final String PROPERTY_PREFIX = VdooHttpClient.class.getName() + ".";
+
+    private static final ObjectReader READER = new ObjectMapper().reader()
+            .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+    // Bodies sent under a bandwidth limit are written in chunks of this size, small enough to keep the rate smooth
+    private static final long LIMITED_CHUNK_BYTES = 32 * 1024;
+
+    private static volatile VdooHttpClient defaultClient;
+
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final int maxConnectionsPerHost;
+    private final boolean gzip;
+    private final SSLSocketFactory sslSocketFactory;
+    private final Map<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+
+    public VdooHttpClient(int connectTimeout, int readTimeout, int maxConnectionsPerHost, int sslSessionCacheSize,
+                          int sslSessionTimeout, boolean gzip) {
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        this.gzip = gzip;
+
+        try {
+            SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(null, null, null);
+            sslContext.getClientSessionContext().setSessionCacheSize(sslSessionCacheSize);
+            sslContext.getClientSessionContext().setSessionTimeout(sslSessionTimeout);
+            this.sslSocketFactory = sslContext.getSocketFactory();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not initialize the TLS context", e);
+        }
+    }
+
+    public static VdooHttpClient getDefault() {
+        if (defaultClient == null) {
+            synchronized (VdooHttpClient.class) {
+                if (defaultClient == null) {
+                    defaultClient = new VdooHttpClient(
+                        Integer.getInteger(PROPERTY_PREFIX + "connectTimeout", 5000),
+                        Integer.getInteger(PROPERTY_PREFIX + "readTimeout", 0),
+                        Integer.getInteger(PROPERTY_PREFIX + "maxConnectionsPerHost", 20),
+                        Integer.getInteger(PROPERTY_PREFIX + "sslSessionCacheSize", 0),
+                        Integer.getInteger(PROPERTY_PREFIX + "sslSessionTimeout", 24 * 60 * 60),
+                        !"false".equals(System.getProperty(PROPERTY_PREFIX + "gzip"))
+                    );
+                }
+            }
+        }
+        return defaultClient;
+    }
+
+    public static ObjectReader getReader() {
+        return READER;
+    }
+
+    /*
+     * Decodes a successful response straight from the response stream.
+     */
+    public interface ResponseHandler<T> {
+        T handle(JsonParser parser) throws IOException;
+    }
+
+    private static final ResponseHandler<JsonNode> TREE_HANDLER = parser -> {
+        if (parser.nextToken() == null)
+            return MissingNode.getInstance();
+        return READER.readTree(parser);
+    };
+
+    /*
+     * Calls a Vdoo API url and decodes its JSON response as a tree. 'token' and 'body' are optional.
+     * Prefer the typed variants below for responses whose shape is known.
+     */
+    public JsonNode call(String urlString, String method, String token, byte[] body) throws IOException {
+        return call(urlString, method, token, body, TREE_HANDLER);
+    }
+
+    /*
+     * Calls a Vdoo API url and binds its JSON response to 'type' without building an intermediate tree.
+     */
+    public <T> T call(String urlString, String method, String token, byte[] body, Class<T> type)
+            throws IOException {
+        ObjectReader typeReader = READER.forType(type);
+        return call(urlString, method, token, body, parser -> typeReader.readValue(parser));
+    }
+
+    public <T> T call(String urlString, String method, String token, byte[] body, ResponseHandler<T> handler)
+            throws IOException {
+        URL url = new URL(urlString);
+        Semaphore permits = acquire(url);
+        try {
+            HttpURLConnection connection = openConnection(url, method, token);
+
+            // Requests other than GET always send a body, so a Content-Length is present even when it is empty
+            if (body == null && !method.equals("GET"))
+                body = new byte[0];
+
+            // Small bodies are left to the JDK to buffer, so it can transparently retry on a stale pooled connection
+            if (body != null) {
+                connection.setDoOutput(true);
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(body);
+                }
+            }
+
+            return readResponse(connection, urlString, handler);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /*
+     * Result of a conditional GET. The value is only set if the resource changed since the ETag that was sent.
+     */
+    public static final class ConditionalResponse<T> {
+        private final T value;
+        private final String etag;
+        private final boolean notModified;
+        private final long retryAfterMillis;
+
+        ConditionalResponse(T value, String etag, boolean notModified, long retryAfterMillis) {
+            this.value = value;
+            this.etag = etag;
+            this.notModified = notModified;
+            this.retryAfterMillis = retryAfterMillis;
+        }
+
+        public T getValue() {
+            return value;
+        }
+
+        // The ETag to send with the next call, null if the server does not return one
+        public String getEtag() {
+            return etag;
+        }
+
+        public boolean isNotModified() {
+            return notModified;
+        }
+
+        // How long the server asked to wait before calling again (Retry-After), -1 if it did not
+        public long getRetryAfterMillis() {
+            return retryAfterMillis;
+        }
+    }
+
+    public <T> ConditionalResponse<T> getIfModified(String urlString, String token, String etag, Class<T> type)
+            throws IOException {
+        ObjectReader typeReader = READER.forType(type);
+        return getIfModified(urlString, token, etag, parser -> typeReader.readValue(parser));
+    }
+
+    /*
+     * GETs a Vdoo API url with 'If-None-Match: etag', so a resource that did not change is answered with an empty
+     * 304 response instead of being sent again. 'etag' is optional.
+     */
+    public <T> ConditionalResponse<T> getIfModified(String urlString, String token, String etag,
+                                                    ResponseHandler<T> handler) throws IOException {
+        URL url = new URL(urlString);
+        Semaphore permits = acquire(url);
+        try {
+            HttpURLConnection connection = openConnection(url, "GET", token);
+            if (etag != null)
+                connection.setRequestProperty("If-None-Match", etag);
+
+            if (etag != null && responseCode(connection, urlString) == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                // Reading the empty body hands the connection back to the keep-alive cache
+                connection.getInputStream().close();
+                return new ConditionalResponse<>(null, etag, true, retryAfterMillis(connection));
+            }
+
+            T value = readResponse(connection, urlString, handler);
+            return new ConditionalResponse<>(
+                    value,
+                    connection.getHeaderField("ETag"),
+                    false,
+                    retryAfterMillis(connection)
+            );
+        } finally {
+            permits.release();
+        }
+    }
+
+    /*
+     * Streams 'length' bytes of the file starting at 'offset' as the request body. The bytes are transferred with
+     * positional FileChannel reads, so no part sized buffer is allocated and concurrent uploaders never share a file
+     * position. With bandwidth limiters, the body is sent a chunk at a time, each one once all of them allow it.
+     */
+    public JsonNode uploadFileRegion(String urlString, String method, FileChannel fileChannel, long offset,
+                                     long length, BandwidthLimiter... limiters) throws IOException {
+        URL url = new URL(urlString);
+        Semaphore permits = acquire(url);
+        try {
+            // A streamed body is not retried by the JDK, not even over a pooled connection that the server closed
+            // while idle. It is left to the caller, whose retries are backed off and counted.
+            HttpURLConnection connection = writeFileRegion(url, method, fileChannel, offset, length, limiters);
+            return readResponse(connection, urlString, TREE_HANDLER);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private HttpURLConnection writeFileRegion(URL url, String method, FileChannel fileChannel, long offset,
+                                              long length, BandwidthLimiter[] limiters) throws IOException {
+        boolean isLimited = false;
+        for (BandwidthLimiter limiter : limiters)
+            isLimited = isLimited || (limiter != null && limiter.isLimited());
+
+        HttpURLConnection connection = openConnection(url, method);
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(length);
+
+        try (OutputStream out = connection.getOutputStream()) {
+            WritableByteChannel target = Channels.newChannel(out);
+            long position = offset;
+            long remaining = length;
+            while (remaining > 0) {
+                long chunk = remaining;
+                if (isLimited) {
+                    chunk = Math.min(remaining, LIMITED_CHUNK_BYTES);
+                    for (BandwidthLimiter limiter : limiters) {
+                        if (limiter != null)
+                            limiter.acquire(chunk);
+                    }
+                }
+
+                // transferTo may send less than asked, the whole chunk is sent before tokens are taken again
+                long chunkEnd = position + chunk;
+                while (position < chunkEnd) {
+                    long transferred = fileChannel.transferTo(position, chunkEnd - position, target);
+                    if (transferred <= 0) {
+                        String UPLOAD_ERROR = "Error uploading part.%n Problem: %s";
+                        throw new VdooApiException(0, String.format(UPLOAD_ERROR, "File read error"));
+                    }
+                    position += transferred;
+                }
+                remaining -= chunk;
+            }
+        }
+        return connection;
+    }
+
+    private HttpURLConnection openConnection(URL url, String method, String token) throws IOException {
+        HttpURLConnection connection = openConnection(url, method);
+        if (gzip)
+            connection.setRequestProperty("Accept-Encoding", "gzip");
+        if (token != null)
+            connection.setRequestProperty("Authorization", "Token " + token);
+        return connection;
+    }
+
+    private HttpURLConnection openConnection(URL url, String method) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        if (connection instanceof HttpsURLConnection)
+            ((HttpsURLConnection) connection).setSSLSocketFactory(sslSocketFactory);
+
+        connection.setRequestProperty("Accept", "application/json");
+        connection.setRequestProperty("Content-Type", "application/json");
+        connection.setConnectTimeout(connectTimeout);
+        connection.setReadTimeout(readTimeout);
+        connection.setRequestMethod(method);
+        return connection;
+    }
+
+    private Semaphore acquire(URL url) throws IOException {
+        Semaphore permits = hostPermits.computeIfAbsent(url.getAuthority(), host -> new Semaphore(maxConnectionsPerHost, true));
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a connection to " + url.getAuthority());
+        }
+        return permits;
+    }
+
+    private <T> T readResponse(HttpURLConnection connection, String urlString, ResponseHandler<T> handler)
+            throws IOException {
+        int statusCode = responseCode(connection, urlString);
+
+        if (statusCode < 400) {
+            // Closing the stream hands the connection back to the keep-alive cache
+            try (InputStream responseStream = responseStream(connection, connection.getInputStream());
+                 JsonParser parser = READER.getFactory().createParser(responseStream)) {
+                return handler.handle(parser);
+            } catch (JsonProcessingException e) {
+                throw new VdooApiException(
+                        statusCode,
+                        "Calling url " + urlString + " returned a malformed response: " + e.getOriginalMessage()
+                );
+            }
+        }
+
+        InputStream errorStream = connection.getErrorStream();
+        if (errorStream == null) {
+            throw new VdooApiException(
+                    statusCode,
+                    "Calling url " + urlString + " returned an error status code: " + statusCode,
+                    null,
+                    retryAfterMillis(connection)
+            );
+        }
+
+        String error;
+        try (InputStream responseStream = responseStream(connection, errorStream)) {
+            error = readErrorBody(responseStream);
+        }
+        throw new VdooApiException(
+                statusCode,
+                "Calling url " + urlString + " returned an error:" + error,
+                error,
+                retryAfterMillis(connection)
+        );
+    }
+
+    private static int responseCode(HttpURLConnection connection, String urlString) throws IOException {
+        try {
+            return connection.getResponseCode();
+        } catch (IOException e) {
+            throw new VdooApiException(0, "Calling url " + urlString + " failed: " + e.getMessage());
+        }
+    }
+
+    /*
+     * Retry-After is either a number of seconds or an HTTP date. Returns -1 if it is missing or invalid.
+     */
+    static long retryAfterMillis(HttpURLConnection connection) {
+        String retryAfter = connection.getHeaderField("Retry-After");
+        if (retryAfter == null)
+            return -1;
+
+        try {
+            return Math.max(0, Long.parseLong(retryAfter.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            // Not a number of seconds, try a date
+        }
+        try {
+            ZonedDateTime date = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, date.toInstant().toEpochMilli() - System.currentTimeMillis());
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    private static InputStream responseStream(HttpURLConnection connection, InputStream stream) throws IOException {
+        if ("gzip".equalsIgnoreCase(connection.getContentEncoding()))
+            return new GZIPInputStream(stream);
+        return stream;
+    }
+
+    private static String readErrorBody(InputStream responseStream) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = responseStream.read(buffer)) != -1) {
+            body.write(buffer, 0, read);
+        }
+
+        try {
+            return READER.readTree(new ByteArrayInputStream(body.toByteArray())).toString();
+        } catch (IOException e) {
+            // Not a JSON error (e.g. a proxy error page), report it as is
+            return body.toString(StandardCharsets.UTF_8.name());
+        }
+    }
+}
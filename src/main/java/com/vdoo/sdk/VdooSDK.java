@@ -1,15 +1,16 @@
 package com.vdoo.sdk;
 
 import java.io.*;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.*;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
 public class VdooSDK {
@@ -18,85 +19,67 @@ public class VdooSDK {
     private static final String SDK_VERSION = __Version__;
     private static final String SDK_NAME = "VdooSDK";
 
-    private static final int MAX_UPLOAD_CONCURRENCY = 5;
+    // Upper bound for the adaptive upload concurrency, the server's max_concurrency still applies on top of it
+    private static final int MAX_UPLOAD_CONCURRENCY =
+        Integer.getInteger(VdooSDK.class.getName() + ".maxUploadConcurrency", 10);
     private static final int UPLOAD_RETRIES = 5;
+    private static final long RETRY_BACKOFF_MILLIS = 500;
+    private static final long MAX_RETRY_BACKOFF_MILLIS = 30 * 1000;
 
     private String baseUrl;
 
-    private static class AbortException extends IOException {
-        public int statusCode;
-        public AbortException(int statusCode, String message) {
-            super(message);
-            this.statusCode = statusCode;
-        }
+    private final VdooHttpClient httpClient = VdooHttpClient.getDefault();
+    private final ScanMetrics metrics = new ScanMetrics();
 
-        private static final long serialVersionUID = 1L;
-    }
+    private int maxUploadConcurrency;
+    private long maxUploadBytesPerSecond;
+    private UploadStatistics lastUploadStatistics;
+    private UploadIndex uploadIndex;
+    private String lastImageSha256;
+    private boolean lastUploadReused;
 
-    private JsonNode callUrl(String urlString, String method, String token, byte[] postParams) throws IOException {
+    private String resolveUrl(String urlString) {
         if (!urlString.startsWith("http"))
-            urlString = baseUrl + urlString;
-
-        URL url = new URL(urlString);
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        connection.setRequestProperty("Accept", "application/json");
-        connection.setRequestProperty("Content-Type", "application/json");
-        connection.setConnectTimeout(5000);
-        connection.setRequestMethod(method);
-        connection.setDoOutput(true);
-        if (token != null)
-            connection.setRequestProperty("Authorization", "Token " + token);
-
-        if (postParams != null) {
-            int postDataLength = postParams.length;
-            connection.setRequestProperty( "Content-Length", Integer.toString(postDataLength));
-            DataOutputStream wr = new DataOutputStream(connection.getOutputStream());
-            wr.write(postParams);
-            wr.close();
-        }
-
-        try {
-            InputStream responseStream = connection.getInputStream();
-            Scanner s = new Scanner(responseStream, "UTF-8").useDelimiter("\\A");
-            String result = s.hasNext() ? s.next() : "";
-
-            ObjectMapper mapper = new ObjectMapper();
-            return mapper.readTree(result);
-
-        } catch (IOException e) {
-            InputStream responseStream = connection.getErrorStream();
-
-            if (responseStream == null) {
-                String error_code = String.valueOf(connection.getResponseCode());
-                throw new AbortException(
-                        connection.getResponseCode(),
-                        "Calling url " + urlString + " returned an error status code: " + error_code
-                );
-            }
+            return baseUrl + urlString;
+        return urlString;
+    }
 
-            Scanner s = new Scanner(responseStream, "UTF-8").useDelimiter("\\A");
-            String result = s.hasNext() ? s.next() : "";
+    private JsonNode callUrl(String urlString, String method, String token, byte[] postParams) throws IOException {
+        return metrics.timed(urlString, () -> httpClient.call(resolveUrl(urlString), method, token, postParams));
+    }
 
-            ObjectMapper mapper = new ObjectMapper();
-            String error = "Calling url " + urlString + " returned an error:" + mapper.readTree(result).toString();
-            throw new AbortException(connection.getResponseCode(), error);
-        }
+    private <T> T callUrl(String urlString, String method, String token, byte[] postParams, Class<T> type)
+            throws IOException {
+        return metrics.timed(urlString, () -> httpClient.call(resolveUrl(urlString), method, token, postParams,
+            type));
     }
 
     private class MultipartUploader {
-        RandomAccessFile fileObj;
+        FileChannel fileChannel;
         String fileName;
         String artifactId;
         String token;
         String imageId;
         int totalParts;
         int maxConcurrency;
-
-        MultipartUploader(RandomAccessFile fileObj, String fileName, String artifactId, String token) {
-            this.fileObj = fileObj;
+        File stateFile;
+        long lastModified;
+        UploadState state;
+        final Queue<Integer> pendingParts = new ConcurrentLinkedQueue<>();
+        AdaptiveConcurrencyLimit concurrencyLimit;
+        // Shared by the part uploaders of this upload
+        BandwidthLimiter bandwidthLimiter;
+        volatile boolean failed;
+        volatile Exception lastError;
+
+        MultipartUploader(FileChannel fileChannel, String fileName, String artifactId, String token,
+                          File stateFile, long lastModified) {
+            this.fileChannel = fileChannel;
             this.fileName = fileName;
             this.artifactId = artifactId;
             this.token = token;
+            this.stateFile = stateFile;
+            this.lastModified = lastModified;
 
             imageId = null;
             totalParts = 0;
@@ -104,54 +87,146 @@ public class VdooSDK {
         }
 
         private String upload() throws IOException {
+            UploadState resumedState = stateFile == null ? null
+                : UploadState.load(stateFile, baseUrl, artifactId, fileChannel.size(), lastModified);
+            if (resumedState != null) {
+                try {
+                    state = resumedState;
+                    imageId = resumedState.getImageUuid();
+                    totalParts = resumedState.getTotalParts();
+                    maxConcurrency = resumedState.getMaxConcurrency();
+                    return uploadParts();
+                } catch (IOException e) {
+                    if (!isRejectedByServer(lastError != null ? lastError : e))
+                        throw e;
+                    // The server doesn't accept this upload anymore (e.g. it expired), start a new one instead
+                    resumedState.delete();
+                    pendingParts.clear();
+                    failed = false;
+                    lastError = null;
+                }
+            }
+
             startUpload();
+            state = null;
+            if (stateFile != null) {
+                UploadState newState = new UploadState(stateFile, baseUrl, artifactId, fileChannel.size(),
+                    lastModified, imageId, totalParts, maxConcurrency);
+                try {
+                    newState.save();
+                    state = newState;
+                } catch (IOException ignored) {
+                    // The image's directory is not writable, the upload just won't be resumable
+                }
+            }
+            return uploadParts();
+        }
+
+        private boolean isRejectedByServer(Exception e) {
+            if (!(e instanceof VdooApiException))
+                return false;
+            int statusCode = ((VdooApiException) e).getStatusCode();
+            return statusCode >= 400 && statusCode < 500 && statusCode != 429;
+        }
+
+        private String uploadParts() throws IOException {
             maxConcurrency = Math.min(maxConcurrency, MAX_UPLOAD_CONCURRENCY);
+            if (maxUploadConcurrency > 0)
+                maxConcurrency = Math.min(maxConcurrency, maxUploadConcurrency);
+
+            // Parts are handed out one at a time from a shared queue, so a worker stuck on a slow part does not
+            // hold back parts that idle workers could upload meanwhile.
+            int resumedParts = 0;
+            for (int partNumber = 1; partNumber < totalParts + 1; partNumber++) {
+                if (state != null && state.isCompleted(partNumber)) {
+                    resumedParts++;
+                    continue;
+                }
+                pendingParts.add(partNumber);
+            }
+            int queuedParts = pendingParts.size();
+            // Up to maxConcurrency workers are started, but how many of them upload at once is adapted to the
+            // observed throughput and errors
+            concurrencyLimit = new AdaptiveConcurrencyLimit(maxConcurrency);
+            bandwidthLimiter = new BandwidthLimiter(maxUploadBytesPerSecond);
+
             List<PartsUploader> uploaders = new ArrayList<>();
             for (int i = 0; i < maxConcurrency; i++) {
-                uploaders.add(new PartsUploader(this, imageId, totalParts, i, maxConcurrency));
+                uploaders.add(new PartsUploader(this, imageId));
             }
 
-            ThreadPoolExecutor executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(maxConcurrency);
+            long uploadStart = System.nanoTime();
             List<Future<Integer>> futures = new ArrayList<>();
-            for (int i = 0; i < maxConcurrency; i++) {
-                Future<Integer> future = executor.submit(uploaders.get(i));
-                futures.add(future);
-            }
+            try {
+                for (int i = 0; i < maxConcurrency; i++) {
+                    futures.add(UploadScheduler.get().submit(uploaders.get(i)));
+                }
 
-            for (int i = 0; i < maxConcurrency; i++) {
-                int ret = 0;
-                try {
-                    ret = futures.get(i).get();
-                    if (ret < 0)
+                for (int i = 0; i < maxConcurrency; i++) {
+                    int ret = 0;
+                    try {
+                        ret = futures.get(i).get();
+                        if (ret < 0)
+                            throw new IOException(String.format("Exception from uploader %d", i));
+                    } catch (InterruptedException | ExecutionException e) {
                         throw new IOException(String.format("Exception from uploader %d", i));
-                } catch (InterruptedException | ExecutionException e) {
-                    throw new IOException(String.format("Exception from uploader %d", i));
+                    }
                 }
+            } finally {
+                // Stops the other workers if one failed, or if the upload was interrupted
+                failed = failed || futures.stream().anyMatch(future -> !future.isDone());
+                for (Future<Integer> future : futures)
+                    future.cancel(true);
             }
 
+            long[] workerBusyNanos = new long[maxConcurrency];
+            int[] workerParts = new int[maxConcurrency];
+            long uploadedBytes = 0;
+            for (int i = 0; i < maxConcurrency; i++) {
+                workerBusyNanos[i] = uploaders.get(i).busyNanos;
+                workerParts[i] = uploaders.get(i).uploadedParts;
+                uploadedBytes += uploaders.get(i).uploadedBytes;
+            }
+            lastUploadStatistics = new UploadStatistics(
+                queuedParts, System.nanoTime() - uploadStart, workerBusyNanos, workerParts,
+                concurrencyLimit.getPeakLimit(), resumedParts, uploadedBytes, bandwidthLimiter.getBytesPerSecond(),
+                BandwidthLimiter.getJvmLimiter().getBytesPerSecond());
+
             finishUpload(imageId);
+            if (state != null)
+                state.delete();
             return imageId;
         }
 
+        private void partFinished(int partNumber) {
+            if (state == null)
+                return;
+            try {
+                state.markCompleted(partNumber);
+            } catch (IOException ignored) {
+                // At worst this part is sent again if the upload has to be resumed
+            }
+        }
+
         private void startUpload() throws IOException {
-            long fileSizeBytes = fileObj.length();
+            long fileSizeBytes = fileChannel.size();
 
-            ObjectMapper mapper = new ObjectMapper();
-            ObjectNode uploadParams = mapper.createObjectNode();
+            ObjectNode uploadParams = JsonNodeFactory.instance.objectNode();
             uploadParams.put("artifact_id", this.artifactId);
             uploadParams.put("sdk_version", SDK_VERSION);
             uploadParams.put("sdk_name", SDK_NAME);
             uploadParams.put("file_name", fileName);
             uploadParams.put("file_size_bytes", fileSizeBytes);
-            JsonNode uploadDetails = VdooSDK.this.callUrl(
+            UploadRequest uploadDetails = VdooSDK.this.callUrl(
                 "/v3/images/upload_request/",
                 "POST",
                 token,
-                uploadParams.toString().getBytes(StandardCharsets.UTF_8));
+                uploadParams.toString().getBytes(StandardCharsets.UTF_8),
+                UploadRequest.class);
 
-            imageId = uploadDetails.get("image_uuid").textValue();
-            totalParts = uploadDetails.get("total_parts").intValue();
-            maxConcurrency = uploadDetails.get("max_concurrency").intValue();
+            imageId = uploadDetails.getImageUuid();
+            totalParts = uploadDetails.getTotalParts();
+            maxConcurrency = uploadDetails.getMaxConcurrency();
         }
 
         private void finishUpload(String imageId) throws IOException {
@@ -164,81 +239,145 @@ public class VdooSDK {
 
         MultipartUploader uploadObj;
         String imageId;
-        int totalParts;
-        int uploaderId;
-        long totalUploaderCount;
+        long busyNanos;
+        int uploadedParts;
+        long uploadedBytes;
 
-        PartsUploader(MultipartUploader uploadObj, String imageId, int totalParts,
-         int uploaderId, long totalUploaderCount) {
+        PartsUploader(MultipartUploader uploadObj, String imageId) {
             this.uploadObj = uploadObj;
             this.imageId = imageId;
-            this.totalParts = totalParts;
-            this.uploaderId = uploaderId;
-            this.totalUploaderCount = totalUploaderCount;
         }
 
         @Override
         public Integer call() {
-            for (int partNumber = 1; partNumber < totalParts + 1; partNumber++) {
-                if (((partNumber - 1) % totalUploaderCount) != uploaderId) {
-                    continue;
-                }
-
-                int retryCount = 0;
-                while (retryCount < UPLOAD_RETRIES) {
-                    try {
-                        startUploadPart(partNumber);
+            AdaptiveConcurrencyLimit concurrencyLimit = uploadObj.concurrencyLimit;
+            try {
+                while (!uploadObj.failed) {
+                    concurrencyLimit.acquire();
+                    Integer partNumber = uploadObj.pendingParts.poll();
+                    if (partNumber == null) {
+                        concurrencyLimit.release();
                         break;
-                    } catch (Exception e) {
-                        retryCount++;
                     }
+
+                    int retryCount = 0;
+                    while (true) {
+                        long attemptStart = System.nanoTime();
+                        try {
+                            long partBytes = startUploadPart(partNumber);
+                            long partNanos = System.nanoTime() - attemptStart;
+                            busyNanos += partNanos;
+                            uploadedBytes += partBytes;
+                            recordPart(partBytes, partNanos);
+                            concurrencyLimit.onSuccess(partBytes);
+                            break;
+                        } catch (Exception e) {
+                            busyNanos += System.nanoTime() - attemptStart;
+                            concurrencyLimit.onFailure(isThrottled(e));
+                            retryCount++;
+                            if (retryCount == UPLOAD_RETRIES) {
+                                uploadObj.lastError = e;
+                                break;
+                            }
+                            metrics.increment(ScanMetrics.Metric.UPLOAD_PART_RETRIES, null);
+                            Thread.sleep(retryBackoffMillis(retryCount));
+                            concurrencyLimit.acquire();
+                        }
+                    }
+
+                    if (retryCount == UPLOAD_RETRIES) {
+                        // No point for the other workers to carry on, the upload can't be finished anyway
+                        uploadObj.failed = true;
+                        return -1;
+                    }
+                    uploadObj.partFinished(partNumber);
+                    uploadedParts++;
                 }
-                if (retryCount == UPLOAD_RETRIES) {
-                    return -1;
-                }
+            } catch (InterruptedException e) {
+                uploadObj.failed = true;
+                Thread.currentThread().interrupt();
+                return -1;
             }
             return 0;
         }
 
-        private void startUploadPart(int partNumber) throws IOException {
-            JsonNode part_details = null;
+        private void recordPart(long partBytes, long partNanos) {
+            metrics.observeNanos(ScanMetrics.Metric.UPLOAD_PART_SECONDS, null, partNanos);
+            metrics.add(ScanMetrics.Metric.UPLOAD_BYTES, null, partBytes);
+            // Parts that were already uploaded say nothing about the rate
+            if (partBytes > 0 && partNanos > 0)
+                metrics.observe(ScanMetrics.Metric.UPLOAD_PART_BYTES_PER_SECOND, null, partBytes * 1e9 / partNanos);
+        }
+
+        private boolean isThrottled(Exception e) {
+            if (!(e instanceof VdooApiException))
+                return false;
+            int statusCode = ((VdooApiException) e).getStatusCode();
+            return statusCode == 429 || statusCode == 503;
+        }
+
+        // Exponential backoff with jitter, so that retries of many uploaders don't hit the server in lockstep
+        private long retryBackoffMillis(int retryCount) {
+            long backoff = Math.min(MAX_RETRY_BACKOFF_MILLIS, RETRY_BACKOFF_MILLIS << Math.min(retryCount - 1, 16));
+            return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+        }
+
+        // Returns the number of bytes that were sent
+        private long startUploadPart(int partNumber) throws IOException {
             String url = String.format("/v3/images/%s/part/%s/", imageId, partNumber);
             try {
-                part_details = callUrl(url, "GET", uploadObj.token, null);
-                actuallyUploadPart(partNumber, part_details);
+                PartDetails partDetails = callUrl(url, "GET", uploadObj.token, null, PartDetails.class);
+                return actuallyUploadPart(partNumber, partDetails);
             }
-            catch (AbortException e) {
-                if (e.statusCode == 400 && part_details.get("details").asText().equals("part already uploaded and finished"))
-                    return;
+            catch (VdooApiException e) {
+                if (e.getStatusCode() == 400 && isPartAlreadyUploaded(e))
+                    return 0;
                 else
                     throw e;
             }
         }
 
-        private void actuallyUploadPart(int partNumber, JsonNode data) throws IOException {
-            if (data.get("part_length_bytes").asText().equals("0")) {
+        private boolean isPartAlreadyUploaded(VdooApiException e) {
+            if (e.getResponseBody() == null)
+                return false;
+            try {
+                JsonNode details = VdooHttpClient.getReader().readTree(e.getResponseBody()).path("details");
+                return details.asText().equals("part already uploaded and finished");
+            } catch (IOException notJson) {
+                return false;
+            }
+        }
+
+        private long actuallyUploadPart(int partNumber, PartDetails data) throws IOException {
+            if (data.getPartLengthBytes() == 0) {
                 afterUploadPart(partNumber);
-                return;
+                return 0;
             }
 
-            int offset = data.get("start_offset_bytes").asInt();
-            int len = data.get("part_length_bytes").asInt();
-            byte[] fileChunk = new byte[len];
-            uploadObj.fileObj.seek(offset);
-            int ret = uploadObj.fileObj.read(fileChunk, 0, len);
+            long offset = data.getStartOffsetBytes();
+            long len = data.getPartLengthBytes();
 
-            if (ret != data.get("part_length_bytes").asInt()) {
+            if (offset < 0 || offset + len > uploadObj.fileChannel.size()) {
                 String UPLOAD_ERROR = "Error uploading part.%n Problem: %s";
-                throw new AbortException(0, String.format(UPLOAD_ERROR, "File read error"));
+                throw new VdooApiException(0, String.format(UPLOAD_ERROR, "File read error"));
             }
 
-            callUrl(
-                data.get("prepared_request_URL").asText(),
-                data.get("prepared_request_method").asText(),
-                null,
-                fileChunk
+            if (data.getPreparedRequestUrl() == null || data.getPreparedRequestMethod() == null) {
+                String UPLOAD_ERROR = "Error uploading part.%n Problem: %s";
+                throw new VdooApiException(0, String.format(UPLOAD_ERROR, "No prepared request for part " + partNumber));
+            }
+
+            httpClient.uploadFileRegion(
+                resolveUrl(data.getPreparedRequestUrl()),
+                data.getPreparedRequestMethod(),
+                uploadObj.fileChannel,
+                offset,
+                len,
+                uploadObj.bandwidthLimiter,
+                BandwidthLimiter.getJvmLimiter()
             );
             afterUploadPart(partNumber);
+            return len;
         }
 
         private void afterUploadPart(int partNumber) throws IOException {
@@ -248,9 +387,78 @@ public class VdooSDK {
     }
 
     private String uploadFile(String artifactId, String name, String imageFile, String token) throws IOException {
-        RandomAccessFile fileObj = new RandomAccessFile(imageFile, "r");
-        MultipartUploader uploader = new MultipartUploader(fileObj, name, artifactId, token);
-        return uploader.upload();
+        lastUploadStatistics = null;
+        lastImageSha256 = null;
+        lastUploadReused = false;
+
+        try (FileChannel fileChannel = FileChannel.open(Paths.get(imageFile), StandardOpenOption.READ)) {
+            if (uploadIndex != null) {
+                // The hash has to be known before upload_request is sent, so it takes its own sequential pass over
+                // the file. That pass also warms the page cache for the part reads that may follow.
+                lastImageSha256 = UploadIndex.sha256(fileChannel);
+                String knownImageUuid = lookupUploadIndex(artifactId, lastImageSha256);
+                if (knownImageUuid != null) {
+                    if (isReusable(knownImageUuid, token)) {
+                        lastUploadReused = true;
+                        return knownImageUuid;
+                    }
+                    removeFromUploadIndex(artifactId, lastImageSha256);
+                }
+            }
+
+            MultipartUploader uploader = new MultipartUploader(fileChannel, name, artifactId, token,
+                UploadState.stateFileFor(imageFile), new File(imageFile).lastModified());
+            String imageUuid = uploader.upload();
+
+            if (uploadIndex != null) {
+                recordInUploadIndex(artifactId, lastImageSha256, imageUuid);
+            }
+            return imageUuid;
+        }
+    }
+
+    /*
+     * An image found in the index can be reused as long as the server still knows it and its scan did not fail.
+     */
+    private boolean isReusable(String imageUuid, String token) throws IOException {
+        try {
+            ScanStatus status = callUrl(
+                String.format("/v3/images/%s/scan_status/", imageUuid),
+                "GET",
+                token,
+                null,
+                ScanStatus.class);
+            return !status.isFailure();
+        } catch (VdooApiException e) {
+            if (e.getStatusCode() == 404)
+                return false;
+            throw e;
+        }
+    }
+
+    // The index only saves work, a broken index file must never fail an upload
+    private String lookupUploadIndex(String artifactId, String sha256) {
+        try {
+            return uploadIndex.lookup(baseUrl, artifactId, sha256);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void recordInUploadIndex(String artifactId, String sha256, String imageUuid) {
+        try {
+            uploadIndex.record(baseUrl, artifactId, sha256, imageUuid);
+        } catch (IOException ignored) {
+            // Next upload of this image simply won't be skipped
+        }
+    }
+
+    private void removeFromUploadIndex(String artifactId, String sha256) {
+        try {
+            uploadIndex.remove(baseUrl, artifactId, sha256);
+        } catch (IOException ignored) {
+            // The entry is checked again, and dropped again, on the next lookup
+        }
     }
 
     private void loopUntilScanDone(String imageUuid, String token, int timeout, boolean verbose)
@@ -261,22 +469,22 @@ public class VdooSDK {
         LocalDateTime startTime = LocalDateTime.now();
         int currentTry = 1;
         while (startTime.plusSeconds(timeout).isAfter(LocalDateTime.now())) {
-            JsonNode res = callUrl(
+            ScanStatus res = callUrl(
                 String.format(STATUS_URL, imageUuid),
                 "GET",
                 token,
-                null);
+                null,
+                ScanStatus.class);
 
-            String extractionStatus = res.get("analysis_status").get("current").get("name").asText();
-            if (extractionStatus.equals("Success")) {
+            String extractionStatus = res.getName();
+            if (res.isSuccess()) {
                 if (verbose) {
                     System.out.println("Done");
                 }
                 return;
             }
 
-            if (extractionStatus.equals("Failure")) {
-                res.get("analysis_status").get("current").get("error_code").asText();
+            if (res.isFailure()) {
                 return;
             }
 
@@ -293,6 +501,59 @@ public class VdooSDK {
         }
     }
 
+    /*
+     * Enables skipping uploads of images that were already uploaded to the same artifact, as recorded in the given
+     * index. Pass null to always upload.
+     */
+    public void setUploadIndex(UploadIndex uploadIndex) {
+        this.uploadIndex = uploadIndex;
+    }
+
+    /*
+     * Caps how many parts an upload sends at the same time, below the limits of the server and of the JVM.
+     * Pass 0 for no cap.
+     */
+    public void setMaxUploadConcurrency(int maxUploadConcurrency) {
+        this.maxUploadConcurrency = maxUploadConcurrency;
+    }
+
+    /*
+     * Caps the bytes per second an upload sends, over all of its parts. Pass 0 for no cap.
+     */
+    public void setMaxUploadBytesPerSecond(long maxUploadBytesPerSecond) {
+        this.maxUploadBytesPerSecond = maxUploadBytesPerSecond;
+    }
+
+    /*
+     * Caps the bytes per second sent by all the uploads of the JVM together, on top of the cap of each upload.
+     * The last value set applies to the uploads that are already running too. Pass 0 for no cap.
+     */
+    public static void setMaxJvmUploadBytesPerSecond(long maxUploadBytesPerSecond) {
+        BandwidthLimiter jvmLimiter = BandwidthLimiter.getJvmLimiter();
+        if (jvmLimiter.getBytesPerSecond() != maxUploadBytesPerSecond)
+            jvmLimiter.setBytesPerSecond(maxUploadBytesPerSecond);
+    }
+
+    // Metrics of the calls made by this instance, see ScanMetrics
+    public ScanMetrics getMetrics() {
+        return metrics;
+    }
+
+    // Whether the last analyzeImage call reused a previously uploaded image instead of uploading it
+    public boolean wasLastUploadReused() {
+        return lastUploadReused;
+    }
+
+    // SHA-256 of the image of the last analyzeImage call, only computed when an upload index is set
+    public String getLastImageSha256() {
+        return lastImageSha256;
+    }
+
+    // Statistics of the last upload done by analyzeImage, null if nothing was uploaded
+    public UploadStatistics getLastUploadStatistics() {
+        return lastUploadStatistics;
+    }
+
     public String analyzeImage(String baseUrl, String artifactId, String fileName, String filePath, String token)
             throws IOException {
         this.baseUrl = baseUrl;
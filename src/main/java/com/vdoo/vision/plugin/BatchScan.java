@@ -0,0 +1,301 @@
+package com.vdoo.vision.plugin;
+
+import hudson.FilePath;
+import hudson.AbortException;
+import hudson.model.InvisibleAction;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.vdoo.sdk.ScanStatus;
+
+/*
+ * Scans several images in a single build step: the images matched by a glob, or listed as ScanImages.
+ * The images are uploaded, and their reports downloaded, by at most 'concurrency' threads. The scans are waited for
+ * by ScanStatusPoller, which holds no thread, so a batch takes about as long as its slowest image rather than the sum
+ * of all of them.
+ *
+ * Every image gets its own report. Once all of them are done a summary is logged, and the step fails if any image
+ * failed or passed a threshold. Without waiting for results the images are only uploaded.
+ */
+final class BatchScan {
+    static final int DEFAULT_CONCURRENCY = 4;
+
+    private final List<ScannerAction> actions = new ArrayList<>();
+    private final boolean waitForResults;
+    private final TaskListener listener;
+    private final Run<?, ?> run;
+    private final ExecutorService executor;
+
+    // Kept to stop waiting when the build is aborted
+    private final List<CompletableFuture<?>> scanEnds = new CopyOnWriteArrayList<>();
+
+    BatchScan(List<ScanSettings> images, int concurrency, TaskListener listener, Run<?, ?> run)
+            throws AbortException {
+        int firstReportNumber = ReportNumbers.allocate(run, images.size());
+        for (ScanSettings image : images) {
+            ScannerAction action = new ScannerAction(image, listener, run);
+            action.setReportNumber(firstReportNumber + actions.size());
+            actions.add(action);
+        }
+
+        this.waitForResults = images.stream().allMatch(image -> Boolean.TRUE.equals(image.getWaitForResults()));
+        this.listener = listener;
+        this.run = run;
+        this.executor = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(concurrency, images.size())),
+                new NamingThreadFactory(new DaemonThreadFactory(), "VdooVision batch scan")
+        );
+    }
+
+    /*
+     * The report numbers handed out to the batches of a build, kept on the build. A number picks the artifacts
+     * directory and the page of a report, so it is never given twice: not to the images of a batch that did not save
+     * a report, and not to batches of parallel branches, which allocate their numbers under a lock.
+     */
+    static final class ReportNumbers extends InvisibleAction {
+        private static final Object LOCK = new Object();
+
+        private int lastReportNumber;
+
+        private ReportNumbers(int lastReportNumber) {
+            this.lastReportNumber = lastReportNumber;
+        }
+
+        /*
+         * Returns the first of 'count' new report numbers of the build.
+         */
+        static int allocate(Run<?, ?> run, int count) {
+            synchronized (LOCK) {
+                ReportNumbers numbers = run.getAction(ReportNumbers.class);
+                if (numbers == null) {
+                    // After the reports of the build that were saved before the numbers were kept, if any
+                    int lastReportNumber = 0;
+                    for (ScannerAction action : run.getActions(ScannerAction.class)) {
+                        lastReportNumber = Math.max(lastReportNumber, action.getReportNumber());
+                    }
+                    numbers = new ReportNumbers(lastReportNumber);
+                    run.addAction(numbers);
+                }
+                int firstReportNumber = numbers.lastReportNumber + 1;
+                numbers.lastReportNumber += count;
+                return firstReportNumber;
+            }
+        }
+    }
+
+    static boolean isGlob(String firmwareLocation) {
+        return firmwareLocation != null && (firmwareLocation.contains("*") || firmwareLocation.contains("?"));
+    }
+
+    /*
+     * Whether a step scans a batch of images rather than a single one.
+     */
+    static boolean isBatch(String firmwareLocation, List<ScanImage> images) {
+        return (images != null && !images.isEmpty()) || isGlob(firmwareLocation);
+    }
+
+    /*
+     * The settings of every image of a step: its own image location (if set) and the listed images, with their globs
+     * matched in the workspace. Images without an artifact ID get the one of the step.
+     */
+    static List<ScanSettings> expand(ScanSettings settings, List<ScanImage> images, FilePath workspace)
+            throws IOException, InterruptedException {
+        List<ScanImage> entries = new ArrayList<>();
+        String firmwareLocation = settings.getFirmwareLocation();
+        if (firmwareLocation != null && !firmwareLocation.equals("")) {
+            entries.add(new ScanImage(firmwareLocation, null));
+        }
+        if (images != null) {
+            entries.addAll(images);
+        }
+
+        List<ScanSettings> expanded = new ArrayList<>();
+        for (ScanImage entry : entries) {
+            Integer productId = settings.getProductId();
+            if (entry.getProductId() != null && !entry.getProductId().equals("")) {
+                try {
+                    productId = Integer.parseInt(entry.getProductId());
+                } catch (NumberFormatException e) {
+                    throw new AbortException(Messages.ScannerBuilder_DescriptorImpl_ProductIdNumber());
+                }
+            }
+
+            if (!isGlob(entry.getFirmwareLocation())) {
+                expanded.add(settings.forImage(entry.getFirmwareLocation(), productId));
+                continue;
+            }
+
+            if (workspace == null) {
+                throw new AbortException(Messages.VdooScanStep_WorkspaceMissing());
+            }
+            FilePath[] matches = workspace.list(entry.getFirmwareLocation());
+            if (matches.length == 0) {
+                throw new AbortException(String.format(
+                        Messages.ScannerAction_FirmwareFileMissing(),
+                        entry.getFirmwareLocation()
+                ));
+            }
+            Arrays.sort(matches, Comparator.comparing(FilePath::getRemote));
+            for (FilePath match : matches) {
+                String relativePath = match.getRemote().substring(workspace.getRemote().length() + 1);
+                expanded.add(settings.forImage(relativePath, productId));
+            }
+        }
+        return expanded;
+    }
+
+    /*
+     * Scans the images, and completes once all of them are done, failed or not.
+     */
+    CompletableFuture<List<ImageResult>> start(FilePath workspace) {
+        listener.getLogger().println(String.format(Messages.BatchScan_Started(), actions.size()));
+
+        List<CompletableFuture<ImageResult>> scans = new ArrayList<>();
+        for (ScannerAction action : actions) {
+            scans.add(scan(action, workspace));
+        }
+
+        return CompletableFuture.allOf(scans.toArray(new CompletableFuture[0]))
+                .handle((ignored, error) -> {
+                    executor.shutdown();
+                    List<ImageResult> results = new ArrayList<>();
+                    for (CompletableFuture<ImageResult> scan : scans) {
+                        results.add(scan.join());
+                    }
+                    return results;
+                });
+    }
+
+    private CompletableFuture<ImageResult> scan(ScannerAction action, FilePath workspace) {
+        ImageResult result = new ImageResult(action);
+
+        CompletableFuture<Void> uploaded = CompletableFuture.runAsync(() -> {
+            try {
+                action.upload(workspace);
+            } catch (IOException | InterruptedException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+
+        if (!waitForResults) {
+            return uploaded.handle((ignored, error) -> result.ended(error));
+        }
+
+        return uploaded
+                .thenCompose(ignored -> {
+                    CompletableFuture<ScanStatus> scanEnd = action.watchScanStatus();
+                    scanEnds.add(scanEnd);
+                    return scanEnd;
+                })
+                .thenRunAsync(() -> {
+                    try {
+                        action.saveReport();
+                        result.isReportSaved = true;
+                        action.checkThresholds();
+                    } catch (IOException | InterruptedException e) {
+                        throw new CompletionException(e);
+                    }
+                }, executor)
+                .handle((ignored, error) -> result.ended(error));
+    }
+
+    /*
+     * Scans the images on the thread of the build, see finish.
+     */
+    List<ImageResult> run(FilePath workspace) throws IOException, InterruptedException {
+        CompletableFuture<List<ImageResult>> results = start(workspace);
+        try {
+            return finish(results.get());
+        } catch (InterruptedException e) {
+            cancel();
+            throw e;
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /*
+     * Adds the reports to the build and logs the summary of the batch. Throws if an image failed.
+     */
+    List<ImageResult> finish(List<ImageResult> results) throws AbortException {
+        int failures = 0;
+        for (ImageResult result : results) {
+            ScannerAction action = result.getAction();
+            if (result.isReportSaved || !waitForResults) {
+                run.addAction(action);
+            }
+
+            String verdict = Messages.BatchScan_ImagePassed();
+            if (result.getError() != null) {
+                failures++;
+                verdict = result.getError().getMessage() != null
+                        ? result.getError().getMessage()
+                        : result.getError().toString();
+            }
+            listener.getLogger().println(String.format(
+                    Messages.BatchScan_ImageResult(),
+                    action.getFirmwareLocation(),
+                    action.getFirmwareUUID(),
+                    action.getThreatLevel(),
+                    action.getHighlightedIssuesCount(),
+                    verdict
+            ));
+        }
+
+        if (failures > 0) {
+            throw new AbortException(String.format(Messages.BatchScan_Failed(), failures, results.size()));
+        }
+        listener.getLogger().println(String.format(Messages.BatchScan_Passed(), results.size()));
+        return results;
+    }
+
+    /*
+     * Stops the uploads, and stops waiting for the scans.
+     */
+    void cancel() {
+        for (CompletableFuture<?> scanEnd : scanEnds) {
+            scanEnd.cancel(false);
+        }
+        executor.shutdownNow();
+    }
+
+    static final class ImageResult {
+        private final ScannerAction action;
+        private volatile boolean isReportSaved;
+        private volatile Throwable error;
+
+        ImageResult(ScannerAction action) {
+            this.action = action;
+        }
+
+        private ImageResult ended(Throwable error) {
+            while (error instanceof CompletionException && error.getCause() != null) {
+                error = error.getCause();
+            }
+            this.error = error;
+            return this;
+        }
+
+        ScannerAction getAction() {
+            return action;
+        }
+
+        Throwable getError() {
+            return error;
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package com.vdoo.vision.plugin;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/*
+ * The identities of the findings of a report, kept next to its parts as finding-ids.bin, so the findings of two builds
+ * are compared without reading their reports, see FindingsDiff. For every compared part, its entries are identified
+ * by the same key as in their ReportIndex (see ReportIndex.EntryFields: the CVE id, the exposure or component name),
+ * and held as the sorted 64-bit hashes of the keys. Components also have the hash of their version, to tell the ones
+ * that changed. The keys themselves follow the hashes, to name the entries that differ.
+ *
+ * The file is gzip compressed:
+ *   "VDFI", version, number of parts, then for every part:
+ *   name, count, hasVersions, hashes of the keys (sorted), [hashes of the versions], keys, [versions]
+ */
+final class FindingIds {
+    static final String FILE_NAME = "finding-ids.bin";
+
+    static final String CVES = "cves";
+    static final String EXPOSURES = "exposures";
+    static final String COMPONENTS = "software_components";
+    // Parts compared between builds, by part file name. Only the entries of the components have a version.
+    static final String[] PARTS = {CVES, EXPOSURES, COMPONENTS};
+
+    private static final int MAGIC = 0x56444649;
+    private static final int VERSION = 1;
+
+    private final Map<String, Part> parts;
+
+    private FindingIds(Map<String, Part> parts) {
+        this.parts = parts;
+    }
+
+    /*
+     * The findings of a part, by increasing hash of their keys.
+     */
+    static final class Part {
+        private final long[] hashes;
+        private final long[] versionHashes;
+        private final String[] keys;
+        private final String[] versions;
+
+        private Part(long[] hashes, long[] versionHashes, String[] keys, String[] versions) {
+            this.hashes = hashes;
+            this.versionHashes = versionHashes;
+            this.keys = keys;
+            this.versions = versions;
+        }
+
+        int size() {
+            return hashes.length;
+        }
+
+        long getHash(int position) {
+            return hashes[position];
+        }
+
+        boolean hasVersions() {
+            return versionHashes != null;
+        }
+
+        long getVersionHash(int position) {
+            return versionHashes[position];
+        }
+
+        String getKey(int position) {
+            return keys[position];
+        }
+
+        // Null if the part has no versions
+        String getVersion(int position) {
+            return versions == null ? null : versions[position];
+        }
+    }
+
+    private static final Part EMPTY_PART = new Part(new long[0], null, new String[0], null);
+
+    /*
+     * The findings of a part, empty if the report has no such part.
+     */
+    Part getPart(String partName) {
+        return parts.getOrDefault(partName, EMPTY_PART);
+    }
+
+    /*
+     * Reads the keys of the compared parts in reportDirectory in a streaming pass each, and writes their ids next to
+     * them. Entries without a key can not be told apart and are left out.
+     */
+    static FindingIds write(File reportDirectory, ReportFormat format) throws IOException {
+        Map<String, Part> parts = new LinkedHashMap<>();
+        for (String partName : PARTS) {
+            File partFile = new File(reportDirectory, format.getPartFileName(partName));
+            if (partFile.isFile()) {
+                parts.put(partName, build(partFile, format, partName.equals(COMPONENTS)));
+            }
+        }
+
+        File file = new File(reportDirectory, FILE_NAME);
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(new FileOutputStream(tempFile), 64 * 1024)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(parts.size());
+            for (Map.Entry<String, Part> entry : parts.entrySet()) {
+                Part part = entry.getValue();
+                writeString(out, entry.getKey());
+                out.writeInt(part.size());
+                out.writeBoolean(part.hasVersions());
+                for (long hash : part.hashes) {
+                    out.writeLong(hash);
+                }
+                if (part.hasVersions()) {
+                    for (long versionHash : part.versionHashes) {
+                        out.writeLong(versionHash);
+                    }
+                }
+                for (String key : part.keys) {
+                    writeString(out, key);
+                }
+                if (part.hasVersions()) {
+                    for (String version : part.versions) {
+                        writeString(out, version);
+                    }
+                }
+            }
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return new FindingIds(parts);
+    }
+
+    /*
+     * Reads the ids of the report in reportDirectory. Null if they were not saved, e.g. by an older version.
+     */
+    static FindingIds load(File reportDirectory) throws IOException {
+        File file = new File(reportDirectory, FILE_NAME);
+        if (!file.isFile()) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(file), 64 * 1024)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+
+            Map<String, Part> parts = new LinkedHashMap<>();
+            int partCount = in.readInt();
+            for (int i = 0; i < partCount; i++) {
+                String partName = readString(in);
+                int size = readLength(in);
+                boolean hasVersions = in.readBoolean();
+                long[] hashes = new long[size];
+                for (int j = 0; j < size; j++) {
+                    hashes[j] = in.readLong();
+                }
+                long[] versionHashes = hasVersions ? new long[size] : null;
+                if (hasVersions) {
+                    for (int j = 0; j < size; j++) {
+                        versionHashes[j] = in.readLong();
+                    }
+                }
+                String[] keys = new String[size];
+                for (int j = 0; j < size; j++) {
+                    keys[j] = readString(in);
+                }
+                String[] versions = hasVersions ? new String[size] : null;
+                if (hasVersions) {
+                    for (int j = 0; j < size; j++) {
+                        versions[j] = readString(in);
+                    }
+                }
+                parts.put(partName, new Part(hashes, versionHashes, keys, versions));
+            }
+            return new FindingIds(parts);
+        }
+    }
+
+    private static Part build(File partFile, ReportFormat format, boolean hasVersions) throws IOException {
+        // The versions of every key. An image can hold several versions of a component, they are compared together.
+        Map<String, TreeSet<String>> entries = new HashMap<>();
+
+        try (JsonParser parser = format.createPartParser(partFile)) {
+            while (ReportFormat.nextEntry(parser)) {
+                if (parser.currentToken() != JsonToken.START_OBJECT) {
+                    parser.skipChildren();
+                    continue;
+                }
+
+                ReportIndex.EntryFields fields = new ReportIndex.EntryFields();
+                String version = null;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String fieldName = parser.getCurrentName();
+                    JsonToken value = parser.nextToken();
+                    if (!value.isScalarValue()) {
+                        parser.skipChildren();
+                    } else if (hasVersions && version == null && fieldName.equals("version")) {
+                        version = parser.getValueAsString();
+                    } else {
+                        fields.accept(fieldName, parser);
+                    }
+                }
+
+                String key = fields.getKey();
+
+                if (key != null) {
+                    TreeSet<String> versions = entries.computeIfAbsent(key, k -> new TreeSet<>());
+                    if (version != null) {
+                        versions.add(version);
+                    }
+                }
+            }
+        }
+
+        // Sorted by hash, as pairs of the hash and the key
+        long[][] sorted = new long[entries.size()][];
+        String[] keys = entries.keySet().toArray(new String[0]);
+        for (int i = 0; i < keys.length; i++) {
+            sorted[i] = new long[]{hash(keys[i]), i};
+        }
+        Arrays.sort(sorted, (a, b) -> Long.compare(a[0], b[0]));
+
+        // Keys whose hashes collide are too rare to be worth telling apart, the first one is kept
+        int size = 0;
+        long[] hashes = new long[sorted.length];
+        long[] versionHashes = hasVersions ? new long[sorted.length] : null;
+        String[] sortedKeys = new String[sorted.length];
+        String[] versions = hasVersions ? new String[sorted.length] : null;
+        for (long[] entry : sorted) {
+            if (size > 0 && hashes[size - 1] == entry[0]) {
+                continue;
+            }
+            String key = keys[(int) entry[1]];
+            hashes[size] = entry[0];
+            sortedKeys[size] = key;
+            if (hasVersions) {
+                versions[size] = String.join(", ", entries.get(key));
+                versionHashes[size] = hash(versions[size]);
+            }
+            size++;
+        }
+
+        return new Part(
+                Arrays.copyOf(hashes, size),
+                hasVersions ? Arrays.copyOf(versionHashes, size) : null,
+                Arrays.copyOf(sortedKeys, size),
+                hasVersions ? Arrays.copyOf(versions, size) : null
+        );
+    }
+
+    /*
+     * 64-bit FNV-1a of the UTF-8 bytes, with the finalizer of SplitMix64 so the hashes spread over the whole range.
+     */
+    static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+        return hash ^ (hash >>> 31);
+    }
+
+    // Length-prefixed UTF-8, as writeUTF can not hold more than 64 KB
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[readLength(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // A corrupt file fails with an IOException like a truncated one, rather than a NegativeArraySizeException
+    private static int readLength(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Corrupt " + FILE_NAME + ": negative length " + length);
+        }
+        return length;
+    }
+}
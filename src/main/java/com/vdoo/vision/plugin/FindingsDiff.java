@@ -0,0 +1,237 @@
+package com.vdoo.vision.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/*
+ * What changed in the findings of a report since the report of a reference build. It is computed from the FindingIds
+ * of both reports by merging their sorted hashes, in a single linear pass per part. Saved next to the report as
+ * findings-diff.json:
+ *   {"reference_build": 41, "new_cves": ["CVE-2021-3711", ...], "fixed_cves": [...], "new_exposures": [...],
+ *    "fixed_exposures": [...], "changed_components": [{"name": "openssl", "from": "1.1.1k", "to": "1.1.1l"}, ...]}
+ * A component added since the reference build has no "from", a removed one no "to".
+ */
+public final class FindingsDiff {
+    static final String FILE_NAME = "findings-diff.json";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final int referenceBuild;
+    private final List<String> newCves;
+    private final List<String> fixedCves;
+    private final List<String> newExposures;
+    private final List<String> fixedExposures;
+    private final List<ComponentChange> changedComponents;
+
+    private FindingsDiff(int referenceBuild, List<String> newCves, List<String> fixedCves, List<String> newExposures,
+                         List<String> fixedExposures, List<ComponentChange> changedComponents) {
+        this.referenceBuild = referenceBuild;
+        this.newCves = newCves;
+        this.fixedCves = fixedCves;
+        this.newExposures = newExposures;
+        this.fixedExposures = fixedExposures;
+        this.changedComponents = changedComponents;
+    }
+
+    public static final class ComponentChange {
+        private final String name;
+        private final String from;
+        private final String to;
+
+        ComponentChange(String name, String from, String to) {
+            this.name = name;
+            this.from = from;
+            this.to = to;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        // The versions in the reference build, null if the component was added
+        public String getFrom() {
+            return from;
+        }
+
+        // The versions in this build, null if the component was removed
+        public String getTo() {
+            return to;
+        }
+    }
+
+    static FindingsDiff compute(int referenceBuild, FindingIds current, FindingIds reference) {
+        List<String> newCves = new ArrayList<>();
+        List<String> fixedCves = new ArrayList<>();
+        merge(current.getPart(FindingIds.CVES), reference.getPart(FindingIds.CVES), newCves, fixedCves, null);
+
+        List<String> newExposures = new ArrayList<>();
+        List<String> fixedExposures = new ArrayList<>();
+        merge(current.getPart(FindingIds.EXPOSURES), reference.getPart(FindingIds.EXPOSURES), newExposures,
+                fixedExposures, null);
+
+        List<ComponentChange> changedComponents = new ArrayList<>();
+        merge(current.getPart(FindingIds.COMPONENTS), reference.getPart(FindingIds.COMPONENTS), null, null,
+                changedComponents);
+
+        // The hashes are in no meaningful order
+        Collections.sort(newCves);
+        Collections.sort(fixedCves);
+        Collections.sort(newExposures);
+        Collections.sort(fixedExposures);
+        changedComponents.sort(Comparator.comparing(ComponentChange::getName));
+        return new FindingsDiff(referenceBuild, newCves, fixedCves, newExposures, fixedExposures, changedComponents);
+    }
+
+    /*
+     * Walks both parts by increasing hash. The keys only in 'current' are added to 'added', the ones only in
+     * 'reference' to 'removed'. With 'changes', every key that was added, removed or whose version changed is added
+     * to it instead.
+     */
+    private static void merge(FindingIds.Part current, FindingIds.Part reference, List<String> added,
+                              List<String> removed, List<ComponentChange> changes) {
+        int i = 0;
+        int j = 0;
+        while (i < current.size() || j < reference.size()) {
+            int order;
+            if (j == reference.size()) {
+                order = -1;
+            } else if (i == current.size()) {
+                order = 1;
+            } else {
+                order = Long.compare(current.getHash(i), reference.getHash(j));
+            }
+
+            if (order < 0) {
+                if (changes != null) {
+                    changes.add(new ComponentChange(current.getKey(i), null, current.getVersion(i)));
+                } else {
+                    added.add(current.getKey(i));
+                }
+                i++;
+            } else if (order > 0) {
+                if (changes != null) {
+                    changes.add(new ComponentChange(reference.getKey(j), reference.getVersion(j), null));
+                } else {
+                    removed.add(reference.getKey(j));
+                }
+                j++;
+            } else {
+                if (changes != null && current.hasVersions() && reference.hasVersions()
+                        && current.getVersionHash(i) != reference.getVersionHash(j)) {
+                    changes.add(new ComponentChange(current.getKey(i), reference.getVersion(j),
+                            current.getVersion(i)));
+                }
+                i++;
+                j++;
+            }
+        }
+    }
+
+    void write(File reportDirectory) throws IOException {
+        File file = new File(reportDirectory, FILE_NAME);
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (JsonGenerator generator = MAPPER.getFactory().createGenerator(tempFile, JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            generator.writeNumberField("reference_build", referenceBuild);
+            writeStrings(generator, "new_cves", newCves);
+            writeStrings(generator, "fixed_cves", fixedCves);
+            writeStrings(generator, "new_exposures", newExposures);
+            writeStrings(generator, "fixed_exposures", fixedExposures);
+            generator.writeArrayFieldStart("changed_components");
+            for (ComponentChange change : changedComponents) {
+                generator.writeStartObject();
+                generator.writeStringField("name", change.getName());
+                if (change.getFrom() != null) {
+                    generator.writeStringField("from", change.getFrom());
+                }
+                if (change.getTo() != null) {
+                    generator.writeStringField("to", change.getTo());
+                }
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /*
+     * Reads the diff saved with the report in reportDirectory. Null if there is none.
+     */
+    static FindingsDiff load(File reportDirectory) throws IOException {
+        File file = new File(reportDirectory, FILE_NAME);
+        if (!file.isFile()) {
+            return null;
+        }
+
+        JsonNode diff = MAPPER.readTree(file);
+        List<ComponentChange> changedComponents = new ArrayList<>();
+        for (JsonNode change : diff.path("changed_components")) {
+            changedComponents.add(new ComponentChange(
+                    change.path("name").asText(),
+                    change.path("from").textValue(),
+                    change.path("to").textValue()
+            ));
+        }
+        return new FindingsDiff(
+                diff.path("reference_build").asInt(),
+                readStrings(diff, "new_cves"),
+                readStrings(diff, "fixed_cves"),
+                readStrings(diff, "new_exposures"),
+                readStrings(diff, "fixed_exposures"),
+                changedComponents
+        );
+    }
+
+    private static void writeStrings(JsonGenerator generator, String fieldName, List<String> values)
+            throws IOException {
+        generator.writeArrayFieldStart(fieldName);
+        for (String value : values) {
+            generator.writeString(value);
+        }
+        generator.writeEndArray();
+    }
+
+    private static List<String> readStrings(JsonNode diff, String fieldName) {
+        List<String> values = new ArrayList<>();
+        for (JsonNode value : diff.path(fieldName)) {
+            values.add(value.asText());
+        }
+        return values;
+    }
+
+    public int getReferenceBuild() {
+        return referenceBuild;
+    }
+
+    public List<String> getNewCves() {
+        return newCves;
+    }
+
+    public List<String> getFixedCves() {
+        return fixedCves;
+    }
+
+    public List<String> getNewExposures() {
+        return newExposures;
+    }
+
+    public List<String> getFixedExposures() {
+        return fixedExposures;
+    }
+
+    public List<ComponentChange> getChangedComponents() {
+        return changedComponents;
+    }
+}
@@ -0,0 +1,242 @@
+package com.vdoo.vision.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+ * The findings of the scans of a job, build after build, for its trend chart. Every saved report appends a fixed-size
+ * record to vdoo-trend.bin in the job directory:
+ *   build number (int), report number (short), threat level (byte), unused (byte),
+ *   highlighted exposures (int), highlighted CVEs (int), malicious files (int)
+ * after an 8 bytes header ("VDTR" and the version). So the trend of the last N builds is a single read of the last
+ * N records, 40 KB for 2000 builds, and no build or report has to be loaded for it.
+ * Records are only appended: the records of deleted builds stay, and a report recorded again supersedes the earlier
+ * record of the same build and report number.
+ */
+final class FindingsTrend {
+    static final String FILE_NAME = "vdoo-trend.bin";
+
+    private static final int MAGIC = 0x56445452;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    static final int RECORD_SIZE = 20;
+
+    // By increasing severity. The threat level of a record is its index, 0 if the report had none or an unknown one.
+    static final List<String> THREAT_LEVELS = Collections.unmodifiableList(Arrays.asList(
+            null, "None", "Very Low", "Low", "Medium", "High", "Very High"
+    ));
+
+    private FindingsTrend() {}
+
+    static final class Record {
+        private final int buildNumber;
+        private final int reportNumber;
+        private final int threatLevel;
+        private final int highlightedExposuresCount;
+        private final int highlightedCVEsCount;
+        private final int maliciousFilesCount;
+
+        Record(int buildNumber, int reportNumber, String threatLevel, int highlightedExposuresCount,
+               int highlightedCVEsCount, int maliciousFilesCount) {
+            this(buildNumber, reportNumber, Math.max(0, THREAT_LEVELS.indexOf(threatLevel)),
+                    highlightedExposuresCount, highlightedCVEsCount, maliciousFilesCount);
+        }
+
+        private Record(int buildNumber, int reportNumber, int threatLevel, int highlightedExposuresCount,
+                       int highlightedCVEsCount, int maliciousFilesCount) {
+            this.buildNumber = buildNumber;
+            this.reportNumber = reportNumber;
+            this.threatLevel = threatLevel;
+            this.highlightedExposuresCount = highlightedExposuresCount;
+            this.highlightedCVEsCount = highlightedCVEsCount;
+            this.maliciousFilesCount = maliciousFilesCount;
+        }
+
+        int getBuildNumber() {
+            return buildNumber;
+        }
+
+        int getReportNumber() {
+            return reportNumber;
+        }
+
+        // Null if the report had no threat level, or one this version does not know
+        String getThreatLevel() {
+            return THREAT_LEVELS.get(threatLevel);
+        }
+
+        int getThreatLevelRank() {
+            return threatLevel;
+        }
+
+        int getHighlightedExposuresCount() {
+            return highlightedExposuresCount;
+        }
+
+        int getHighlightedCVEsCount() {
+            return highlightedCVEsCount;
+        }
+
+        int getMaliciousFilesCount() {
+            return maliciousFilesCount;
+        }
+
+        /*
+         * The findings of a build that scanned several images: the counts of its reports added up, with the
+         * highest threat level.
+         */
+        Record add(Record other) {
+            return new Record(
+                    buildNumber,
+                    0,
+                    Math.max(threatLevel, other.threatLevel),
+                    highlightedExposuresCount + other.highlightedExposuresCount,
+                    highlightedCVEsCount + other.highlightedCVEsCount,
+                    maliciousFilesCount + other.maliciousFilesCount
+            );
+        }
+
+        private void writeTo(ByteBuffer buffer) {
+            buffer.putInt(buildNumber);
+            buffer.putShort((short) reportNumber);
+            buffer.put((byte) threatLevel);
+            buffer.put((byte) 0);
+            buffer.putInt(highlightedExposuresCount);
+            buffer.putInt(highlightedCVEsCount);
+            buffer.putInt(maliciousFilesCount);
+        }
+
+        private static Record readFrom(ByteBuffer buffer) {
+            int buildNumber = buffer.getInt();
+            int reportNumber = buffer.getShort() & 0xffff;
+            int threatLevel = buffer.get();
+            buffer.get();
+            int threatLevelRank = threatLevel > 0 && threatLevel < THREAT_LEVELS.size() ? threatLevel : 0;
+            return new Record(buildNumber, reportNumber, threatLevelRank, buffer.getInt(), buffer.getInt(),
+                    buffer.getInt());
+        }
+    }
+
+    static boolean exists(File jobDirectory) {
+        return new File(jobDirectory, FILE_NAME).isFile();
+    }
+
+    /*
+     * Appends the record of a report. A record cut short by a crash is overwritten, so the records stay aligned.
+     */
+    static synchronized void append(File jobDirectory, Record record) throws IOException {
+        File file = new File(jobDirectory, FILE_NAME);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            long position = channel.size();
+            ByteBuffer buffer;
+            if (position < HEADER_SIZE) {
+                position = 0;
+                buffer = ByteBuffer.allocate(HEADER_SIZE + RECORD_SIZE);
+                buffer.putInt(MAGIC);
+                buffer.putInt(VERSION);
+            } else {
+                checkHeader(channel);
+                position -= (position - HEADER_SIZE) % RECORD_SIZE;
+                buffer = ByteBuffer.allocate(RECORD_SIZE);
+            }
+            record.writeTo(buffer);
+            buffer.flip();
+
+            channel.truncate(position);
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        }
+    }
+
+    /*
+     * The findings of the last 'maxBuilds' builds with a record, by increasing build number, the reports of a build
+     * added up. Empty if the job has no trend yet.
+     * With a report per build, this is one read of the last maxBuilds + 1 records. Builds that scanned several images
+     * have several records, so earlier records are read until there are enough builds.
+     */
+    static List<Record> read(File jobDirectory, int maxBuilds) throws IOException {
+        File file = new File(jobDirectory, FILE_NAME);
+        if (!file.isFile()) {
+            return Collections.emptyList();
+        }
+
+        // The last record of a report wins
+        Map<Integer, Map<Integer, Record>> builds = new TreeMap<>();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                return Collections.emptyList();
+            }
+            checkHeader(channel);
+
+            long endRecord = (size - HEADER_SIZE) / RECORD_SIZE;
+            long chunkRecords = maxBuilds + 1L;
+            // One build more than asked for, the earliest one may have records before the records that were read
+            while (endRecord > 0 && builds.size() <= maxBuilds) {
+                long firstRecord = Math.max(0, endRecord - chunkRecords);
+                ByteBuffer records = readRecords(channel, firstRecord, endRecord);
+
+                List<Record> chunk = new ArrayList<>(records.remaining() / RECORD_SIZE);
+                while (records.remaining() >= RECORD_SIZE) {
+                    chunk.add(Record.readFrom(records));
+                }
+                // Latest first, as the chunks are read from the end
+                for (int i = chunk.size() - 1; i >= 0; i--) {
+                    Record record = chunk.get(i);
+                    builds.computeIfAbsent(record.getBuildNumber(), buildNumber -> new TreeMap<>())
+                            .putIfAbsent(record.getReportNumber(), record);
+                }
+                endRecord = firstRecord;
+            }
+        }
+
+        // The reports of a build are added up
+        List<Record> trend = new ArrayList<>(builds.size());
+        for (Map<Integer, Record> reports : builds.values()) {
+            Record build = null;
+            for (Record report : reports.values()) {
+                build = build == null ? report : build.add(report);
+            }
+            trend.add(build);
+        }
+        return trend.size() > maxBuilds ? trend.subList(trend.size() - maxBuilds, trend.size()) : trend;
+    }
+
+    private static ByteBuffer readRecords(FileChannel channel, long firstRecord, long endRecord) throws IOException {
+        ByteBuffer records = ByteBuffer.allocate((int) ((endRecord - firstRecord) * RECORD_SIZE));
+        long position = HEADER_SIZE + firstRecord * RECORD_SIZE;
+        while (records.hasRemaining()) {
+            int read = channel.read(records, position);
+            if (read < 0) {
+                break;
+            }
+            position += read;
+        }
+        records.flip();
+        return records;
+    }
+
+    private static void checkHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) {
+                break;
+            }
+        }
+        header.flip();
+        if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC || header.getInt() != VERSION) {
+            throw new IOException("Not a trend file of this version: " + FILE_NAME);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.vdoo.vision.plugin;
+
+import hudson.Extension;
+import hudson.model.Action;
+import hudson.model.Job;
+import jenkins.model.TransientActionFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.ToIntFunction;
+
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+/*
+ * The findings trend of a job, drawn from its FindingsTrend:
+ *   JOB_URL/vdoo-trend/                                      - the trend page
+ *   JOB_URL/vdoo-trend/graph?builds=100&width=500&height=200  - the chart, as SVG
+ * Shown on the page of every job that saved a report.
+ */
+public class FindingsTrendAction implements Action {
+    public static final String URL_NAME = "vdoo-trend";
+
+    private static final int DEFAULT_BUILDS = 100;
+    private static final int MAX_BUILDS = 5000;
+
+    private static final int MARGIN_LEFT = 40;
+    private static final int MARGIN_RIGHT = 10;
+    private static final int MARGIN_TOP = 20;
+    private static final int MARGIN_BOTTOM = 30;
+    private static final int THREAT_LEVEL_BAND_HEIGHT = 6;
+
+    private static final String CVES_COLOR = "#d24939";
+    private static final String EXPOSURES_COLOR = "#e08a00";
+    private static final String MALICIOUS_FILES_COLOR = "#8e44ad";
+    // By FindingsTrend.THREAT_LEVELS
+    private static final String[] THREAT_LEVEL_COLORS = {
+        "#dddddd", "#bbbbbb", "#2e9e4f", "#8cc63f", "#f2c500", "#e08a00", "#d24939",
+    };
+
+    private final Job<?, ?> job;
+
+    FindingsTrendAction(Job<?, ?> job) {
+        this.job = job;
+    }
+
+    public Job<?, ?> getJob() {
+        return job;
+    }
+
+    public void doGraph(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        int builds = Math.min(Math.max(parseParameter(req, "builds", DEFAULT_BUILDS), 1), MAX_BUILDS);
+        int width = Math.min(Math.max(parseParameter(req, "width", 500), 100), 4000);
+        int height = Math.min(Math.max(parseParameter(req, "height", 200), 80), 2000);
+
+        // The chart only changes when a report is recorded
+        File trendFile = new File(job.getRootDir(), FindingsTrend.FILE_NAME);
+        String etag = "\"" + trendFile.length() + "-" + trendFile.lastModified() + "-" + builds + "-" + width + "x"
+                + height + "\"";
+        if (etag.equals(req.getHeader("If-None-Match"))) {
+            rsp.setStatus(304);
+            return;
+        }
+
+        List<FindingsTrend.Record> trend = FindingsTrend.read(job.getRootDir(), builds);
+
+        rsp.setContentType("image/svg+xml;charset=UTF-8");
+        rsp.setHeader("ETag", etag);
+        rsp.setHeader("Cache-Control", "no-cache");
+        try (Writer writer = new OutputStreamWriter(rsp.getOutputStream(), StandardCharsets.UTF_8)) {
+            writeChart(writer, trend, width, height);
+        }
+    }
+
+    /*
+     * A line per count, by build, over a band colored by the threat level of every build.
+     */
+    static void writeChart(Writer out, List<FindingsTrend.Record> trend, int width, int height) throws IOException {
+        out.write(String.format(Locale.ROOT, "<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"%d\" "
+                        + "height=\"%d\" viewBox=\"0 0 %d %d\" font-family=\"sans-serif\" font-size=\"11\">\n",
+                width, height, width, height));
+
+        int plotWidth = width - MARGIN_LEFT - MARGIN_RIGHT;
+        int plotHeight = height - MARGIN_TOP - MARGIN_BOTTOM - THREAT_LEVEL_BAND_HEIGHT;
+        int plotBottom = MARGIN_TOP + plotHeight;
+
+        if (trend.isEmpty()) {
+            out.write(String.format(Locale.ROOT, "<text x=\"%d\" y=\"%d\" text-anchor=\"middle\">%s</text>\n",
+                    width / 2, height / 2, Messages.FindingsTrendAction_NoScans()));
+            out.write("</svg>\n");
+            return;
+        }
+
+        int max = 1;
+        for (FindingsTrend.Record record : trend) {
+            max = Math.max(max, Math.max(record.getHighlightedCVEsCount(),
+                    Math.max(record.getHighlightedExposuresCount(), record.getMaliciousFilesCount())));
+        }
+
+        // Axes, with the highest count and the first and last builds
+        out.write(String.format(Locale.ROOT, "<path d=\"M%d %d V%d H%d\" stroke=\"#888888\" fill=\"none\"/>\n",
+                MARGIN_LEFT, MARGIN_TOP, plotBottom, MARGIN_LEFT + plotWidth));
+        out.write(String.format(Locale.ROOT, "<text x=\"%d\" y=\"%d\" text-anchor=\"end\">%d</text>\n",
+                MARGIN_LEFT - 4, MARGIN_TOP + 4, max));
+        out.write(String.format(Locale.ROOT, "<text x=\"%d\" y=\"%d\" text-anchor=\"end\">0</text>\n",
+                MARGIN_LEFT - 4, plotBottom + 4));
+        int labelsY = plotBottom + THREAT_LEVEL_BAND_HEIGHT + 16;
+        out.write(String.format(Locale.ROOT, "<text x=\"%d\" y=\"%d\">#%d</text>\n",
+                MARGIN_LEFT, labelsY, trend.get(0).getBuildNumber()));
+        out.write(String.format(Locale.ROOT, "<text x=\"%d\" y=\"%d\" text-anchor=\"end\">#%d</text>\n",
+                MARGIN_LEFT + plotWidth, labelsY, trend.get(trend.size() - 1).getBuildNumber()));
+
+        // Threat level band
+        double step = (double) plotWidth / trend.size();
+        for (int i = 0; i < trend.size(); i++) {
+            FindingsTrend.Record record = trend.get(i);
+            out.write(String.format(Locale.ROOT, "<rect x=\"%.1f\" y=\"%d\" width=\"%.1f\" height=\"%d\" "
+                            + "fill=\"%s\"><title>#%d %s</title></rect>\n",
+                    MARGIN_LEFT + i * step, plotBottom + 1, step, THREAT_LEVEL_BAND_HEIGHT,
+                    THREAT_LEVEL_COLORS[record.getThreatLevelRank()], record.getBuildNumber(),
+                    record.getThreatLevel() == null ? "" : record.getThreatLevel()));
+        }
+
+        writeLine(out, trend, FindingsTrend.Record::getHighlightedCVEsCount, max, step, plotBottom, plotHeight,
+                CVES_COLOR);
+        writeLine(out, trend, FindingsTrend.Record::getHighlightedExposuresCount, max, step, plotBottom, plotHeight,
+                EXPOSURES_COLOR);
+        writeLine(out, trend, FindingsTrend.Record::getMaliciousFilesCount, max, step, plotBottom, plotHeight,
+                MALICIOUS_FILES_COLOR);
+
+        // Legend
+        String[] labels = {
+            Messages.FindingsTrendAction_HighlightedCves(),
+            Messages.FindingsTrendAction_HighlightedExposures(),
+            Messages.FindingsTrendAction_MaliciousFiles(),
+        };
+        String[] colors = {CVES_COLOR, EXPOSURES_COLOR, MALICIOUS_FILES_COLOR};
+        int legendX = MARGIN_LEFT;
+        for (int i = 0; i < labels.length; i++) {
+            out.write(String.format(Locale.ROOT, "<rect x=\"%d\" y=\"4\" width=\"10\" height=\"10\" fill=\"%s\"/>"
+                    + "<text x=\"%d\" y=\"13\">%s</text>\n", legendX, colors[i], legendX + 14, labels[i]));
+            legendX += 14 + labels[i].length() * 6 + 16;
+        }
+
+        out.write("</svg>\n");
+    }
+
+    private static void writeLine(Writer out, List<FindingsTrend.Record> trend,
+                                  ToIntFunction<FindingsTrend.Record> count, int max, double step, int plotBottom,
+                                  int plotHeight, String color) throws IOException {
+        StringBuilder points = new StringBuilder(trend.size() * 12);
+        for (int i = 0; i < trend.size(); i++) {
+            int value = count.applyAsInt(trend.get(i));
+            points.append(String.format(Locale.ROOT, "%.1f,%.1f ",
+                    MARGIN_LEFT + (i + 0.5) * step, plotBottom - (double) value * plotHeight / max));
+        }
+        out.write(String.format(Locale.ROOT,
+                "<polyline points=\"%s\" fill=\"none\" stroke=\"%s\" stroke-width=\"1.5\"/>\n",
+                points.toString().trim(), color));
+    }
+
+    private static int parseParameter(StaplerRequest req, String name, int defaultValue) {
+        try {
+            return Integer.parseInt(req.getParameter(name));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    @Override
+    public String getIconFileName() {
+        return "graph.png";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return Messages.FindingsTrendAction_DisplayName();
+    }
+
+    @Override
+    public String getUrlName() {
+        return URL_NAME;
+    }
+
+    /*
+     * Adds the trend to the jobs that saved a report, freestyle and Pipeline alike.
+     */
+    @Extension
+    @SuppressWarnings("rawtypes")
+    public static final class Factory extends TransientActionFactory<Job> {
+        @Override
+        public Class<Job> type() {
+            return Job.class;
+        }
+
+        @Override
+        public Collection<? extends Action> createFor(Job job) {
+            if (!FindingsTrend.exists(job.getRootDir())) {
+                return Collections.emptyList();
+            }
+            return Collections.singletonList(new FindingsTrendAction(job));
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.vdoo.vision.plugin;
+
+import jenkins.model.Jenkins;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/*
+ * Report parts downloaded by earlier builds, kept under JENKINS_HOME/vdoo-report-cache/<image UUID>/<part file> along
+ * with the ETag they were returned with. A build that scans an image whose report is cached sends that ETag, and on a
+ * 304 links (or copies) the cached part into its artifacts instead of downloading it again. Parts returned without an
+ * ETag can not be revalidated, so they are not cached.
+ *
+ * The cache is bounded in size. Once it grows past the bound, whole images are evicted, least recently used first.
+ * Builds use the cache concurrently, each through its own instance, so parts are put and linked out under a lock
+ * shared by the whole controller, which the eviction holds exclusively.
+ */
+final class ReportCache {
+    static final String DIRECTORY_NAME = "vdoo-report-cache";
+    static final int DEFAULT_MAX_SIZE_MB = 1024;
+
+    // A cache that never has a part, used to download a part again
+    static final ReportCache DISABLED = new ReportCache(null, 0);
+
+    private static final String ETAG_SUFFIX = ".etag";
+
+    private static final ReadWriteLock LOCK = new ReentrantReadWriteLock();
+
+    private final Path root;
+    private final long maxBytes;
+
+    ReportCache(Path root, long maxBytes) {
+        this.root = root;
+        this.maxBytes = maxBytes;
+    }
+
+    static ReportCache get() {
+        VdooGlobalConfiguration config = VdooGlobalConfiguration.get();
+        int maxSizeMB = config == null ? DEFAULT_MAX_SIZE_MB : config.getReportCacheSizeMB();
+        return new ReportCache(
+                new File(Jenkins.get().getRootDir(), DIRECTORY_NAME).toPath(),
+                maxSizeMB * 1024L * 1024L
+        );
+    }
+
+    boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    /*
+     * Returns the ETag of the cached part, or null if the part is not cached.
+     */
+    String getEtag(String imageUuid, String partFileName) {
+        if (!isEnabled()) {
+            return null;
+        }
+
+        Path part = partPath(imageUuid, partFileName);
+        try {
+            if (!Files.exists(part)) {
+                return null;
+            }
+            return new String(Files.readAllBytes(etagPath(part)), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /*
+     * Puts the cached part at 'target'. Returns false if it could not, e.g. because the part was evicted since its
+     * ETag was read, in which case the part has to be downloaded.
+     */
+    boolean copyTo(String imageUuid, String partFileName, File target) {
+        Path part = partPath(imageUuid, partFileName);
+        LOCK.readLock().lock();
+        try {
+            Files.deleteIfExists(target.toPath());
+            linkOrCopy(part, target.toPath());
+            touch(part.getParent());
+            return true;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            LOCK.readLock().unlock();
+        }
+    }
+
+    /*
+     * Caches the part at 'source' with the ETag it was returned with. Does nothing if there is no ETag.
+     * The cache only saves downloads, so failing to write to it is not an error of the build.
+     */
+    void put(String imageUuid, String partFileName, File source, String etag) {
+        if (!isEnabled() || etag == null) {
+            return;
+        }
+
+        Path part = partPath(imageUuid, partFileName);
+
+        // Concurrent builds of the same image may put the same part, each one replaces it atomically
+        Path tempPart = part.resolveSibling(partFileName + "." + UUID.randomUUID() + ".tmp");
+        Path tempEtag = part.resolveSibling(partFileName + ETAG_SUFFIX + "." + UUID.randomUUID() + ".tmp");
+        LOCK.readLock().lock();
+        try {
+            Files.createDirectories(part.getParent());
+            linkOrCopy(source.toPath(), tempPart);
+            Files.write(tempEtag, etag.getBytes(StandardCharsets.UTF_8));
+            Files.move(tempPart, part, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.move(tempEtag, etagPath(part), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            touch(part.getParent());
+        } catch (IOException e) {
+            // Not cached
+            return;
+        } finally {
+            try {
+                Files.deleteIfExists(tempPart);
+                Files.deleteIfExists(tempEtag);
+            } catch (IOException e) {
+                // Left for the eviction
+            } finally {
+                LOCK.readLock().unlock();
+            }
+        }
+
+        try {
+            evict();
+        } catch (IOException e) {
+            // Evicted on the next put
+        }
+    }
+
+    /*
+     * Removes the least recently used images until the cache fits its bound again.
+     */
+    private void evict() throws IOException {
+        LOCK.writeLock().lock();
+        try {
+            evictLocked();
+        } finally {
+            LOCK.writeLock().unlock();
+        }
+    }
+
+    private void evictLocked() throws IOException {
+        List<Path> images = new ArrayList<>();
+        long totalBytes = 0;
+        try (Stream<Path> entries = Files.list(root)) {
+            for (Path image : (Iterable<Path>) entries::iterator) {
+                images.add(image);
+                totalBytes += size(image);
+            }
+        }
+        if (totalBytes <= maxBytes) {
+            return;
+        }
+
+        images.sort(Comparator.comparingLong(ReportCache::lastUsedMillis));
+        for (Path image : images) {
+            if (totalBytes <= maxBytes) {
+                break;
+            }
+            long imageBytes = size(image);
+            delete(image);
+            totalBytes -= imageBytes;
+        }
+    }
+
+    private Path partPath(String imageUuid, String partFileName) {
+        // The UUID comes from the API, keep it from escaping the cache directory
+        return root.resolve(imageUuid.replaceAll("[^A-Za-z0-9-]", "_")).resolve(partFileName);
+    }
+
+    private static Path etagPath(Path part) {
+        return part.resolveSibling(part.getFileName() + ETAG_SUFFIX);
+    }
+
+    /*
+     * The cache and the build artifacts are usually on the same file system, where a hard link saves both the copy
+     * and the disk space. The cached file is never written to in place, so sharing it is safe.
+     */
+    private static void linkOrCopy(Path source, Path target) throws IOException {
+        try {
+            Files.createLink(target, source);
+        } catch (NoSuchFileException e) {
+            throw e;
+        } catch (UnsupportedOperationException | IOException e) {
+            Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void touch(Path image) {
+        try {
+            Files.setLastModifiedTime(image, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // Only affects the eviction order
+        }
+    }
+
+    private static long lastUsedMillis(Path image) {
+        try {
+            return Files.getLastModifiedTime(image).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static long size(Path image) throws IOException {
+        try (Stream<Path> files = Files.list(image)) {
+            return files.mapToLong(file -> file.toFile().length()).sum();
+        } catch (NoSuchFileException e) {
+            return 0;
+        }
+    }
+
+    private static void delete(Path image) throws IOException {
+        try (Stream<Path> files = Files.list(image)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+        } catch (NoSuchFileException e) {
+            return;
+        }
+        Files.deleteIfExists(image);
+    }
+}
@@ -0,0 +1,145 @@
+package com.vdoo.vision.plugin;
+
+import hudson.AbortException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.SerializedString;
+
+/*
+ * How the parts of a report are saved in the build artifacts. The list parts (CVEs, exposures...) are written in the
+ * format as they are downloaded, the small analysis_results and highlighted_issues parts are always JSON files.
+ */
+enum ReportFormat {
+    // Pretty-printed JSON arrays, and all_findings.json with a copy of every part. The format of older versions.
+    JSON(".json", true, true),
+    // JSON arrays without whitespace, and a manifest of the parts instead of all_findings.json
+    COMPACT_JSON(".json", false, false),
+    // Gzip-compressed NDJSON (an entry a line), and a manifest of the parts instead of all_findings.json
+    GZIP_NDJSON(".ndjson.gz", false, false);
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    private final String partFileSuffix;
+    private final boolean isPretty;
+    private final boolean hasAggregatedReport;
+
+    ReportFormat(String partFileSuffix, boolean isPretty, boolean hasAggregatedReport) {
+        this.partFileSuffix = partFileSuffix;
+        this.isPretty = isPretty;
+        this.hasAggregatedReport = hasAggregatedReport;
+    }
+
+    /*
+     * The format of a configured name, JSON if none is configured.
+     */
+    static ReportFormat of(String name) throws AbortException {
+        if (name == null || name.equals("")) {
+            return JSON;
+        }
+        try {
+            return valueOf(name);
+        } catch (IllegalArgumentException e) {
+            throw new AbortException(String.format(Messages.ScannerAction_UnknownReportFormat(), name));
+        }
+    }
+
+    String getPartFileName(String partName) {
+        return partName + partFileSuffix;
+    }
+
+    /*
+     * The name a part file is kept under in the ReportCache, so builds that save their report in different formats
+     * do not take each other's parts. The JSON format keeps the names of older versions.
+     */
+    String getCacheFileName(String fileName) {
+        return this == JSON ? fileName : name().toLowerCase(Locale.ROOT) + "-" + fileName;
+    }
+
+    boolean isPretty() {
+        return isPretty;
+    }
+
+    // Whether all_findings.json is written along with the parts, otherwise ReportManifest rebuilds it on demand
+    boolean hasAggregatedReport() {
+        return hasAggregatedReport;
+    }
+
+    /*
+     * Creates a generator for a list part. Write the entries between startPart and endPart.
+     */
+    JsonGenerator createPartGenerator(File partFile) throws IOException {
+        if (this == GZIP_NDJSON) {
+            OutputStream out = new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(partFile)), 64 * 1024);
+            JsonGenerator generator = FACTORY.createGenerator(out, JsonEncoding.UTF8);
+            generator.setRootValueSeparator(new SerializedString("\n"));
+            return generator;
+        }
+
+        JsonGenerator generator = FACTORY.createGenerator(partFile, JsonEncoding.UTF8);
+        if (isPretty) {
+            generator.useDefaultPrettyPrinter();
+        }
+        return generator;
+    }
+
+    void startPart(JsonGenerator generator) throws IOException {
+        if (this != GZIP_NDJSON) {
+            generator.writeStartArray();
+        }
+    }
+
+    void endPart(JsonGenerator generator) throws IOException {
+        if (this == GZIP_NDJSON) {
+            generator.writeRaw('\n');
+        } else {
+            generator.writeEndArray();
+        }
+    }
+
+    /*
+     * The uncompressed content of a list part.
+     */
+    InputStream openPart(File partFile) throws IOException {
+        InputStream in = new FileInputStream(partFile);
+        if (this == GZIP_NDJSON) {
+            return new GZIPInputStream(new BufferedInputStream(in), 64 * 1024);
+        }
+        return in;
+    }
+
+    /*
+     * Creates a parser for the entries of a list part, to be read with nextEntry.
+     */
+    JsonParser createPartParser(File partFile) throws IOException {
+        JsonParser parser = FACTORY.createParser(openPart(partFile));
+        if (this != GZIP_NDJSON && parser.nextToken() != JsonToken.START_ARRAY) {
+            parser.close();
+            throw new IOException("Expected a report part array in " + partFile);
+        }
+        return parser;
+    }
+
+    /*
+     * Moves the parser to the first token of the next entry. Returns false after the last entry.
+     */
+    static boolean nextEntry(JsonParser parser) throws IOException {
+        JsonToken token = parser.nextToken();
+        return token != null && token != JsonToken.END_ARRAY;
+    }
+}
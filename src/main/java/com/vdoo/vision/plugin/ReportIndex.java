@@ -0,0 +1,332 @@
+package com.vdoo.vision.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.EOFException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/*
+ * Index of a list part of the report, kept next to its part file as <part>.index.json. For every entry it holds its
+ * byte range in the part, a key to search and sort by and its severity. A page of entries can then be filtered,
+ * sorted and read straight from the part file, without parsing the part as a whole. The byte ranges are in the
+ * uncompressed content of the part, see ReportFormat.
+ *
+ * The index is stored column by column:
+ *   {"count": 2, "offsets": [...], "lengths": [...], "keys": [...], "severities": [...]}
+ */
+final class ReportIndex {
+    // Report parts that are lists of findings, by part file name
+    static final String[] INDEXED_PARTS = {
+        "cves",
+        "exposures",
+        "zero_days",
+        "weaknesses",
+        "malicious_files",
+        "software_components",
+        "hardware_components",
+    };
+
+    static final String INDEX_SUFFIX = ".index.json";
+
+    // The key of an entry is the first of these fields that it has, and so is its severity, see EntryFields
+    static final String[] KEY_FIELDS = {"cve_id", "name", "file_name", "path", "id"};
+    static final String[] SEVERITY_FIELDS = {"severity", "threat_level", "risk_level"};
+
+    // From the most to the least severe, unknown severities sort last
+    private static final List<String> SEVERITY_ORDER = Arrays.asList(
+            "critical", "very high", "high", "medium", "low", "very low", "info", "none"
+    );
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    private final long[] offsets;
+    private final int[] lengths;
+    private final String[] keys;
+    private final String[] severities;
+
+    private ReportIndex(long[] offsets, int[] lengths, String[] keys, String[] severities) {
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.keys = keys;
+        this.severities = severities;
+    }
+
+    /*
+     * Picks the key and the severity of an entry among its fields, by the order of KEY_FIELDS and SEVERITY_FIELDS
+     * rather than by the order of the fields in the entry: {"id": 123, "cve_id": "CVE-2021-3711"} is keyed by its
+     * CVE id. Fields that are null or empty are skipped, as report-viewer.js does.
+     */
+    static final class EntryFields {
+        private String key;
+        private int keyRank = KEY_FIELDS.length;
+        private String severity;
+        private int severityRank = SEVERITY_FIELDS.length;
+
+        /*
+         * Takes the scalar value the parser is at, if it is a better key or severity than the ones seen so far.
+         */
+        void accept(String fieldName, JsonParser parser) throws IOException {
+            int rank = Arrays.asList(KEY_FIELDS).indexOf(fieldName);
+            if (rank >= 0 && rank < keyRank) {
+                String value = parser.getValueAsString();
+                if (value != null && !value.isEmpty()) {
+                    key = value;
+                    keyRank = rank;
+                }
+                return;
+            }
+
+            rank = Arrays.asList(SEVERITY_FIELDS).indexOf(fieldName);
+            if (rank >= 0 && rank < severityRank) {
+                String value = parser.getValueAsString();
+                if (value != null && !value.isEmpty()) {
+                    severity = value;
+                    severityRank = rank;
+                }
+            }
+        }
+
+        // Null if the entry has none of KEY_FIELDS
+        String getKey() {
+            return key;
+        }
+
+        // Null if the entry has none of SEVERITY_FIELDS
+        String getSeverity() {
+            return severity;
+        }
+    }
+
+    static boolean isIndexed(String partName) {
+        return Arrays.asList(INDEXED_PARTS).contains(partName);
+    }
+
+    /*
+     * Reads the index of a part of the report in reportDirectory, indexing the part first if it was saved without
+     * an index (e.g. by an older version).
+     */
+    static ReportIndex load(File reportDirectory, String partName, ReportFormat format) throws IOException {
+        File indexFile = new File(reportDirectory, partName + INDEX_SUFFIX);
+        if (indexFile.isFile()) {
+            return read(indexFile);
+        }
+        return write(reportDirectory, partName, format);
+    }
+
+    /*
+     * Indexes the part file in a single streaming pass, and writes the index next to it.
+     */
+    static ReportIndex write(File reportDirectory, String partName, ReportFormat format) throws IOException {
+        ReportIndex index = build(new File(reportDirectory, format.getPartFileName(partName)), format);
+
+        File indexFile = new File(reportDirectory, partName + INDEX_SUFFIX);
+        File tempFile = new File(indexFile.getPath() + ".tmp");
+        try (JsonGenerator generator = FACTORY.createGenerator(tempFile, JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            generator.writeNumberField("count", index.size());
+            generator.writeFieldName("offsets");
+            generator.writeArray(index.offsets, 0, index.size());
+            generator.writeFieldName("lengths");
+            generator.writeArray(index.lengths, 0, index.size());
+            writeStrings(generator, "keys", index.keys);
+            writeStrings(generator, "severities", index.severities);
+            generator.writeEndObject();
+        }
+        Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return index;
+    }
+
+    private static ReportIndex build(File partFile, ReportFormat format) throws IOException {
+        List<long[]> ranges = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        List<String> severities = new ArrayList<>();
+
+        try (JsonParser parser = format.createPartParser(partFile)) {
+            while (ReportFormat.nextEntry(parser)) {
+                long offset = parser.getTokenLocation().getByteOffset();
+                EntryFields fields = new EntryFields();
+
+                if (parser.currentToken() == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String fieldName = parser.getCurrentName();
+                        JsonToken value = parser.nextToken();
+                        if (value.isScalarValue()) {
+                            fields.accept(fieldName, parser);
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+
+                ranges.add(new long[]{offset, parser.getCurrentLocation().getByteOffset() - offset});
+                keys.add(fields.getKey());
+                severities.add(fields.getSeverity());
+            }
+        }
+
+        return new ReportIndex(
+                ranges.stream().mapToLong(range -> range[0]).toArray(),
+                ranges.stream().mapToInt(range -> (int) range[1]).toArray(),
+                keys.toArray(new String[0]),
+                severities.toArray(new String[0])
+        );
+    }
+
+    private static ReportIndex read(File indexFile) throws IOException {
+        try (JsonParser parser = FACTORY.createParser(indexFile)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT
+                    || parser.nextFieldName() == null || !parser.getCurrentName().equals("count")) {
+                throw new JsonParseException(parser, "Expected a report part index");
+            }
+            parser.nextToken();
+            int count = parser.getIntValue();
+
+            long[] offsets = new long[count];
+            int[] lengths = new int[count];
+            String[] keys = new String[count];
+            String[] severities = new String[count];
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.getCurrentName();
+                parser.nextToken();
+                for (int i = 0; parser.nextToken() != JsonToken.END_ARRAY; i++) {
+                    switch (fieldName) {
+                        case "offsets":
+                            offsets[i] = parser.getLongValue();
+                            break;
+                        case "lengths":
+                            lengths[i] = parser.getIntValue();
+                            break;
+                        case "keys":
+                            keys[i] = parser.getValueAsString();
+                            break;
+                        case "severities":
+                            severities[i] = parser.getValueAsString();
+                            break;
+                        default:
+                            parser.skipChildren();
+                    }
+                }
+            }
+            return new ReportIndex(offsets, lengths, keys, severities);
+        }
+    }
+
+    private static void writeStrings(JsonGenerator generator, String fieldName, String[] values) throws IOException {
+        generator.writeArrayFieldStart(fieldName);
+        for (String value : values) {
+            generator.writeString(value);
+        }
+        generator.writeEndArray();
+    }
+
+    int size() {
+        return offsets.length;
+    }
+
+    /*
+     * Number of entries of every severity, from the most to the least severe.
+     */
+    Map<String, Integer> countBySeverity() {
+        return IntStream.range(0, size())
+                .mapToObj(i -> severities[i] == null ? "Unknown" : severities[i])
+                .sorted(Comparator.comparingInt(ReportIndex::severityRank))
+                .collect(Collectors.toMap(severity -> severity, severity -> 1, Integer::sum, LinkedHashMap::new));
+    }
+
+    /*
+     * Returns the positions of the entries that have the severity (if set) and whose key contains the query (if set),
+     * sorted by 'sort' ("key" or "severity", report order otherwise).
+     */
+    int[] select(String severity, String query, String sort, boolean descending) {
+        String lowerQuery = query == null ? null : query.toLowerCase(Locale.ROOT);
+
+        IntStream selected = IntStream.range(0, size())
+                .filter(i -> severity == null || severity.equalsIgnoreCase(severities[i]))
+                .filter(i -> lowerQuery == null
+                        || (keys[i] != null && keys[i].toLowerCase(Locale.ROOT).contains(lowerQuery)));
+
+        Comparator<Integer> order;
+        if ("key".equals(sort)) {
+            order = Comparator.comparing(i -> keys[i], Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER));
+        } else if ("severity".equals(sort)) {
+            order = Comparator.comparingInt(i -> severityRank(severities[i]));
+        } else {
+            order = Comparator.naturalOrder();
+        }
+        if (descending) {
+            order = order.reversed();
+        }
+
+        return selected.boxed().sorted(order).mapToInt(i -> i).toArray();
+    }
+
+    private static int severityRank(String severity) {
+        int rank = severity == null ? -1 : SEVERITY_ORDER.indexOf(severity.toLowerCase(Locale.ROOT));
+        return rank == -1 ? SEVERITY_ORDER.size() : rank;
+    }
+
+    /*
+     * Reads the JSON of the entries at the positions from the content of the part, as is. The part is read once, from
+     * the first entry to the last one, so a compressed part is only decompressed up to the last entry of the page.
+     */
+    byte[][] readEntries(InputStream part, int[] positions) throws IOException {
+        int[] byOffset = IntStream.range(0, positions.length)
+                .boxed()
+                .sorted(Comparator.comparingLong(i -> offsets[positions[i]]))
+                .mapToInt(i -> i)
+                .toArray();
+
+        byte[][] entries = new byte[positions.length][];
+        long partOffset = 0;
+        for (int i : byOffset) {
+            int position = positions[i];
+            skipFully(part, offsets[position] - partOffset);
+
+            entries[i] = new byte[lengths[position]];
+            int read = 0;
+            while (read < entries[i].length) {
+                int count = part.read(entries[i], read, entries[i].length - read);
+                if (count == -1) {
+                    throw new EOFException("The report part is shorter than its index");
+                }
+                read += count;
+            }
+            partOffset = offsets[position] + lengths[position];
+        }
+        return entries;
+    }
+
+    private static void skipFully(InputStream in, long bytes) throws IOException {
+        while (bytes > 0) {
+            long skipped = in.skip(bytes);
+            if (skipped <= 0) {
+                if (in.read() == -1) {
+                    throw new EOFException("The report part is shorter than its index");
+                }
+                skipped = 1;
+            }
+            bytes -= skipped;
+        }
+    }
+}
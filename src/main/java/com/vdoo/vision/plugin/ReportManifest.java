@@ -0,0 +1,153 @@
+package com.vdoo.vision.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/*
+ * Reads and writes the report-manifest.json of a report saved in a compact ReportFormat. The manifest takes the place
+ * of all_findings.json: it has the same layout, with the part files instead of their content:
+ *   {"format": "GZIP_NDJSON", "analysis_summary": "analysis_results.json", ...,
+ *    "components": {"software_components": "software_components.ndjson.gz", ...}, ...}
+ * so all_findings.json can be rebuilt from the parts on demand. Reports without a manifest are in the JSON format.
+ */
+final class ReportManifest {
+    static final String FILE_NAME = "report-manifest.json";
+    static final String ALL_FINDINGS_FILE_NAME = "all_findings.json";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final JsonFactory FACTORY = MAPPER.getFactory();
+
+    // The list parts in all_findings.json, by the field they are grouped under
+    private static final List<String> COMPONENTS = Arrays.asList(
+            "software_components", "hardware_components"
+    );
+    private static final List<String> ALL_SECURITY_ISSUES = Arrays.asList(
+            "exposures", "cves", "zero_days", "weaknesses", "malicious_files"
+    );
+
+    private ReportManifest() {}
+
+    static void write(File reportDirectory, ReportFormat format) throws IOException {
+        File tempFile = new File(reportDirectory, FILE_NAME + ".tmp");
+        try (JsonGenerator generator = FACTORY.createGenerator(tempFile, JsonEncoding.UTF8)) {
+            generator.useDefaultPrettyPrinter();
+            generator.writeStartObject();
+            generator.writeStringField("format", format.name());
+            generator.writeStringField("analysis_summary", "analysis_results.json");
+            generator.writeStringField("highlighted_issues", "highlighted_issues.json");
+
+            generator.writeObjectFieldStart("components");
+            for (String part : COMPONENTS) {
+                generator.writeStringField(part, format.getPartFileName(part));
+            }
+            generator.writeEndObject();
+
+            generator.writeObjectFieldStart("all_security_issues");
+            for (String part : ALL_SECURITY_ISSUES) {
+                generator.writeStringField(part, format.getPartFileName(part));
+            }
+            generator.writeEndObject();
+
+            generator.writeEndObject();
+        }
+        Files.move(tempFile.toPath(), new File(reportDirectory, FILE_NAME).toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /*
+     * The format the report in reportDirectory was saved in.
+     */
+    static ReportFormat readFormat(File reportDirectory) throws IOException {
+        File manifest = new File(reportDirectory, FILE_NAME);
+        if (!manifest.isFile()) {
+            return ReportFormat.JSON;
+        }
+
+        JsonNode format = MAPPER.readTree(manifest).path("format");
+        try {
+            return ReportFormat.valueOf(format.asText());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Unknown report format in " + manifest + ": " + format);
+        }
+    }
+
+    /*
+     * Writes the all_findings.json of the report in reportDirectory, in any format, streaming it from the part files.
+     */
+    static void writeAllFindings(File reportDirectory, OutputStream out) throws IOException {
+        ReportFormat format = readFormat(reportDirectory);
+
+        try (JsonGenerator generator = FACTORY.createGenerator(out, JsonEncoding.UTF8)) {
+            generator.useDefaultPrettyPrinter();
+            generator.writeStartObject();
+            copyObject(generator, "analysis_summary", new File(reportDirectory, "analysis_results.json"));
+            copyObject(generator, "highlighted_issues", new File(reportDirectory, "highlighted_issues.json"));
+
+            generator.writeObjectFieldStart("components");
+            for (String part : COMPONENTS) {
+                copyList(generator, part, format, new File(reportDirectory, format.getPartFileName(part)));
+            }
+            generator.writeEndObject();
+
+            generator.writeObjectFieldStart("all_security_issues");
+            for (String part : ALL_SECURITY_ISSUES) {
+                copyList(generator, part, format, new File(reportDirectory, format.getPartFileName(part)));
+            }
+            generator.writeEndObject();
+
+            generator.writeEndObject();
+        }
+    }
+
+    /*
+     * Writes all_findings.json next to the parts of a report in the JSON format, and the manifest otherwise.
+     */
+    static void writeAggregatedReport(File reportDirectory, ReportFormat format) throws IOException {
+        if (!format.hasAggregatedReport()) {
+            write(reportDirectory, format);
+            return;
+        }
+
+        File allFindings = new File(reportDirectory, ALL_FINDINGS_FILE_NAME);
+        try (OutputStream out = Files.newOutputStream(allFindings.toPath())) {
+            writeAllFindings(reportDirectory, out);
+        }
+    }
+
+    private static void copyObject(JsonGenerator generator, String fieldName, File file) throws IOException {
+        generator.writeFieldName(fieldName);
+        if (!file.isFile()) {
+            generator.writeNull();
+            return;
+        }
+        try (JsonParser parser = FACTORY.createParser(file)) {
+            parser.nextToken();
+            generator.copyCurrentStructure(parser);
+        }
+    }
+
+    private static void copyList(JsonGenerator generator, String fieldName, ReportFormat format, File partFile)
+            throws IOException {
+        generator.writeArrayFieldStart(fieldName);
+        if (partFile.isFile()) {
+            try (JsonParser parser = format.createPartParser(partFile)) {
+                while (ReportFormat.nextEntry(parser)) {
+                    generator.copyCurrentStructure(parser);
+                }
+            }
+        }
+        generator.writeEndArray();
+    }
+}
@@ -0,0 +1,165 @@
+package com.vdoo.vision.plugin;
+
+import hudson.Extension;
+import hudson.model.UnprotectedRootAction;
+import hudson.security.csrf.CrumbExclusion;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.GeneralSecurityException;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import com.vdoo.sdk.ScanStatus;
+import com.vdoo.sdk.VdooHttpClient;
+
+/*
+ * Receives scan completion notifications at JENKINS_URL/vdoo-scan-callback/, so waiting builds learn that their scan
+ * ended without polling for it.
+ *
+ * A notification is a POST of the scan_status response of the image, with the image UUID added:
+ *   {"image_uuid": "...", "analysis_status": {"current": {"name": "Success", "error_code": null}}}
+ * signed with the callback secret of the global configuration in an 'X-Vdoo-Signature: sha256=<hex HMAC of the body>'
+ * header. Notifications of scans that did not end yet, or that no build waits for, are ignored. The others are handed
+ * to the builds waiting in ScanStatusPoller.
+ */
+@Extension
+public class ScanCallbackAction implements UnprotectedRootAction {
+    public static final String URL_NAME = "vdoo-scan-callback";
+    public static final String SIGNATURE_HEADER = "X-Vdoo-Signature";
+
+    private static final String SIGNATURE_PREFIX = "sha256=";
+    private static final int MAX_NOTIFICATION_BYTES = 64 * 1024;
+
+    public void doIndex(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        if (!req.getMethod().equals("POST")) {
+            rsp.sendError(405);
+            return;
+        }
+
+        VdooGlobalConfiguration config = VdooGlobalConfiguration.get();
+        if (config == null || !config.isCallbackEnabled()) {
+            rsp.sendError(404);
+            return;
+        }
+
+        byte[] body = readBody(req.getInputStream());
+        if (body == null) {
+            rsp.sendError(413);
+            return;
+        }
+        if (!isSignatureValid(config.getCallbackSecret().getPlainText(), body, req.getHeader(SIGNATURE_HEADER))) {
+            rsp.sendError(403);
+            return;
+        }
+
+        String imageUuid;
+        ScanStatus status;
+        try {
+            JsonNode notification = VdooHttpClient.getReader().readTree(body);
+            imageUuid = notification.path("image_uuid").textValue();
+            status = VdooHttpClient.getReader().forType(ScanStatus.class).readValue(notification);
+        } catch (JsonProcessingException | IllegalArgumentException e) {
+            rsp.sendError(400, e.getMessage());
+            return;
+        }
+        if (imageUuid == null) {
+            rsp.sendError(400, "image_uuid is missing");
+            return;
+        }
+
+        if (status.isDone()) {
+            ScanStatusPoller.get().scanEnded(imageUuid, status);
+        }
+        rsp.setStatus(204);
+    }
+
+    /*
+     * Returns null if the body is larger than MAX_NOTIFICATION_BYTES.
+     */
+    private static byte[] readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            body.write(buffer, 0, read);
+            if (body.size() > MAX_NOTIFICATION_BYTES) {
+                return null;
+            }
+        }
+        return body.toByteArray();
+    }
+
+    static boolean isSignatureValid(String secret, byte[] body, String signature) {
+        if (signature == null || !signature.startsWith(SIGNATURE_PREFIX)) {
+            return false;
+        }
+        byte[] expected = sign(secret, body).getBytes(StandardCharsets.US_ASCII);
+        byte[] actual = signature.substring(SIGNATURE_PREFIX.length()).toLowerCase().getBytes(StandardCharsets.US_ASCII);
+
+        // Constant time, so the signature can not be guessed byte by byte
+        return MessageDigest.isEqual(expected, actual);
+    }
+
+    /*
+     * Returns the hex HMAC-SHA256 of the body, which senders put in the signature header after 'sha256='.
+     */
+    static String sign(String secret, byte[] body) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+
+            StringBuilder hex = new StringBuilder();
+            for (byte b : mac.doFinal(body)) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return null;
+    }
+
+    @Override
+    public String getUrlName() {
+        return URL_NAME;
+    }
+
+    /*
+     * Notifications are sent by the Vdoo API, which has no CSRF crumb. They are authenticated by their signature.
+     */
+    @Extension
+    public static final class CallbackCrumbExclusion extends CrumbExclusion {
+        @Override
+        public boolean process(HttpServletRequest req, HttpServletResponse resp, FilterChain chain)
+                throws IOException, ServletException {
+            String pathInfo = req.getPathInfo();
+            if (pathInfo != null && (pathInfo.equals("/" + URL_NAME) || pathInfo.startsWith("/" + URL_NAME + "/"))) {
+                chain.doFilter(req, resp);
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.vdoo.vision.plugin;
+
+import hudson.Extension;
+import hudson.model.Descriptor;
+import hudson.model.AbstractDescribableImpl;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+/*
+ * An image of a batch scan, see BatchScan. The location may be a glob relative to the workspace (e.g. out/*.bin),
+ * and the artifact ID is the one of the build step if it is empty.
+ */
+public class ScanImage extends AbstractDescribableImpl<ScanImage> {
+
+    private final String firmwareLocation;
+    private final String productId;
+
+    @DataBoundConstructor
+    public ScanImage(String firmwareLocation, String productId) {
+        this.firmwareLocation = firmwareLocation;
+        this.productId = productId;
+    }
+
+    public String getFirmwareLocation() {
+        return firmwareLocation;
+    }
+
+    public String getProductId() {
+        return productId;
+    }
+
+    @Extension
+    public static final class DescriptorImpl extends Descriptor<ScanImage> {
+        @Override
+        public String getDisplayName() {
+            return Messages.ScanImage_DescriptorImpl_DisplayName();
+        }
+    }
+}
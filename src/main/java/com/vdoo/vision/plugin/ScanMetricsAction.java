@@ -0,0 +1,66 @@
+package com.vdoo.vision.plugin;
+
+import hudson.Extension;
+import hudson.model.RootAction;
+import jenkins.model.Jenkins;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import com.vdoo.sdk.ScanMetrics;
+
+/*
+ * Serves the metrics of the scans of this Jenkins, see ScanMetrics:
+ *   JENKINS_URL/vdoo-metrics/            - as JSON
+ *   JENKINS_URL/vdoo-metrics/prometheus  - in the Prometheus text format, for a scrape job
+ * The uploads made on agents are included once they finished. Only administrators may read the metrics.
+ */
+@Extension
+public class ScanMetricsAction implements RootAction {
+    public static final String URL_NAME = "vdoo-metrics";
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    public void doIndex(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+
+        rsp.setContentType("application/json;charset=UTF-8");
+        try (JsonGenerator generator = FACTORY.createGenerator(rsp.getOutputStream(), JsonEncoding.UTF8)) {
+            generator.useDefaultPrettyPrinter();
+            ScanMetrics.get().writeJson(generator);
+        }
+    }
+
+    public void doPrometheus(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+
+        rsp.setContentType("text/plain;version=0.0.4;charset=UTF-8");
+        try (Writer writer = new OutputStreamWriter(rsp.getOutputStream(), StandardCharsets.UTF_8)) {
+            ScanMetrics.get().writePrometheus(writer);
+        }
+    }
+
+    // Not shown in the side panel
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return Messages.ScanMetricsAction_DisplayName();
+    }
+
+    @Override
+    public String getUrlName() {
+        return URL_NAME;
+    }
+}
@@ -0,0 +1,186 @@
+package com.vdoo.vision.plugin;
+
+import java.io.Serializable;
+
+import hudson.util.Secret;
+
+/*
+ * The options of a single scan, as configured on the freestyle build step or the vdooVisionScan Pipeline step.
+ * Values are kept exactly as they were entered; ScannerAction validates them and applies the defaults.
+ */
+public class ScanSettings implements Serializable {
+    private Secret vdooToken;
+    private String failThreshold;
+    private String maxHighlightedIssues;
+    private String maxHighlightedExposures;
+    private String maxHighlightedCVEs;
+    private String maxMaliciousFiles;
+    private String maxNewCVEs;
+    private Integer productId;
+    private String firmwareLocation;
+    private String baseApi;
+    private Boolean waitForResults;
+    private String reportDownloadConcurrency;
+    private Boolean reuseScannedImages;
+    private String reportFormat;
+    private String maxUploadRate;
+
+    private static final long serialVersionUID = 1;
+
+    public Secret getVdooToken() {
+        return vdooToken;
+    }
+
+    public ScanSettings setVdooToken(Secret vdooToken) {
+        this.vdooToken = vdooToken;
+        return this;
+    }
+
+    public String getFailThreshold() {
+        return failThreshold;
+    }
+
+    public ScanSettings setFailThreshold(String failThreshold) {
+        this.failThreshold = failThreshold;
+        return this;
+    }
+
+    public String getMaxHighlightedIssues() {
+        return maxHighlightedIssues;
+    }
+
+    public ScanSettings setMaxHighlightedIssues(String maxHighlightedIssues) {
+        this.maxHighlightedIssues = maxHighlightedIssues;
+        return this;
+    }
+
+    public String getMaxHighlightedExposures() {
+        return maxHighlightedExposures;
+    }
+
+    public ScanSettings setMaxHighlightedExposures(String maxHighlightedExposures) {
+        this.maxHighlightedExposures = maxHighlightedExposures;
+        return this;
+    }
+
+    public String getMaxHighlightedCVEs() {
+        return maxHighlightedCVEs;
+    }
+
+    public ScanSettings setMaxHighlightedCVEs(String maxHighlightedCVEs) {
+        this.maxHighlightedCVEs = maxHighlightedCVEs;
+        return this;
+    }
+
+    public String getMaxMaliciousFiles() {
+        return maxMaliciousFiles;
+    }
+
+    public ScanSettings setMaxMaliciousFiles(String maxMaliciousFiles) {
+        this.maxMaliciousFiles = maxMaliciousFiles;
+        return this;
+    }
+
+    public String getMaxNewCVEs() {
+        return maxNewCVEs;
+    }
+
+    public ScanSettings setMaxNewCVEs(String maxNewCVEs) {
+        this.maxNewCVEs = maxNewCVEs;
+        return this;
+    }
+
+    public Integer getProductId() {
+        return productId;
+    }
+
+    public ScanSettings setProductId(Integer productId) {
+        this.productId = productId;
+        return this;
+    }
+
+    public String getFirmwareLocation() {
+        return firmwareLocation;
+    }
+
+    public ScanSettings setFirmwareLocation(String firmwareLocation) {
+        this.firmwareLocation = firmwareLocation;
+        return this;
+    }
+
+    public String getBaseApi() {
+        return baseApi;
+    }
+
+    public ScanSettings setBaseApi(String baseApi) {
+        this.baseApi = baseApi;
+        return this;
+    }
+
+    public Boolean getWaitForResults() {
+        return waitForResults;
+    }
+
+    public ScanSettings setWaitForResults(Boolean waitForResults) {
+        this.waitForResults = waitForResults;
+        return this;
+    }
+
+    public String getReportDownloadConcurrency() {
+        return reportDownloadConcurrency;
+    }
+
+    public ScanSettings setReportDownloadConcurrency(String reportDownloadConcurrency) {
+        this.reportDownloadConcurrency = reportDownloadConcurrency;
+        return this;
+    }
+
+    public Boolean getReuseScannedImages() {
+        return reuseScannedImages;
+    }
+
+    public ScanSettings setReuseScannedImages(Boolean reuseScannedImages) {
+        this.reuseScannedImages = reuseScannedImages;
+        return this;
+    }
+
+    public String getReportFormat() {
+        return reportFormat;
+    }
+
+    public ScanSettings setReportFormat(String reportFormat) {
+        this.reportFormat = reportFormat;
+        return this;
+    }
+
+    public String getMaxUploadRate() {
+        return maxUploadRate;
+    }
+
+    public ScanSettings setMaxUploadRate(String maxUploadRate) {
+        this.maxUploadRate = maxUploadRate;
+        return this;
+    }
+
+    /*
+     * The same settings, for another image.
+     */
+    public ScanSettings forImage(String firmwareLocation, Integer productId) {
+        return new ScanSettings()
+                .setVdooToken(vdooToken)
+                .setFailThreshold(failThreshold)
+                .setMaxHighlightedIssues(maxHighlightedIssues)
+                .setMaxHighlightedExposures(maxHighlightedExposures)
+                .setMaxHighlightedCVEs(maxHighlightedCVEs)
+                .setMaxMaliciousFiles(maxMaliciousFiles)
+                .setMaxNewCVEs(maxNewCVEs)
+                .setProductId(productId)
+                .setFirmwareLocation(firmwareLocation)
+                .setBaseApi(baseApi)
+                .setWaitForResults(waitForResults)
+                .setReportDownloadConcurrency(reportDownloadConcurrency)
+                .setReuseScannedImages(reuseScannedImages)
+                .setReportFormat(reportFormat)
+                .setMaxUploadRate(maxUploadRate);
+    }
+}
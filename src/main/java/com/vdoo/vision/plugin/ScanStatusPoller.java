@@ -0,0 +1,270 @@
+package com.vdoo.vision.plugin;
+
+import hudson.AbortException;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.Map;
+import java.util.List;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Executors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.stream.Collectors;
+
+import com.vdoo.sdk.ScanStatus;
+import com.vdoo.sdk.VdooApiException;
+import com.vdoo.sdk.VdooHttpClient;
+
+/*
+ * Polls the status of every scan that a build waits for, on the controller, from a small fixed pool of threads.
+ * Once a second the scans that are due are polled, at most MAX_POLLS_PER_SECOND of them, longest due first. So the
+ * threads and the status requests stay the same however many builds wait, and with many scans each one is just
+ * polled less often. The API has no call for the status of several images, so every scan is still polled by itself.
+ * When each scan is due is decided by StatusPollPolicy, and statuses are fetched with the ETag of the previous one so
+ * an unchanged status costs an empty 304 response.
+ *
+ * Builds that reuse an image wait for the same scan, which is polled once for all of them. The end of a scan can
+ * also be notified through ScanCallbackAction, which ends the wait without waiting for the next poll.
+ * The once a second tick only runs while a build waits, and the threads are stopped along with Jenkins.
+ */
+final class ScanStatusPoller {
+    static final int THREADS = Integer.getInteger(ScanStatusPoller.class.getName() + ".threads", 2);
+    static final int MAX_POLLS_PER_SECOND = Integer.getInteger(ScanStatusPoller.class.getName() + ".maxPollsPerSecond", 5);
+
+    private static final ScanStatusPoller INSTANCE = new ScanStatusPoller();
+
+    /*
+     * Fetches the status of the scan, unless it did not change since the status that was returned with 'etag'.
+     */
+    interface StatusSource {
+        VdooHttpClient.ConditionalResponse<ScanStatus> fetch(String etag) throws IOException;
+    }
+
+    /*
+     * Gets every status of the scan. Returns true once the wait is over, or throws to end the wait with an error.
+     */
+    interface StatusListener {
+        boolean onStatus(ScanStatus status) throws IOException;
+
+        /*
+         * Gets every poll that got no status because the API throttles, fails or can not be reached. Throws to end
+         * the wait, e.g. once the scan timed out.
+         */
+        default void onStatusUnavailable() throws IOException {
+        }
+    }
+
+    private final Map<String, Scan> scans = new ConcurrentHashMap<>();
+    private ScheduledExecutorService executor;
+    private ScheduledFuture<?> ticker;
+
+    static ScanStatusPoller get() {
+        return INSTANCE;
+    }
+
+    /*
+     * Returns a future that is completed once the listener is done with the scan, or completed exceptionally with
+     * the error that ended the wait. Cancel it to stop waiting.
+     */
+    CompletableFuture<ScanStatus> watch(String imageUuid, StatusSource source, StatusListener listener) {
+        Watcher watcher = new Watcher(source, listener);
+        scans.compute(imageUuid, (uuid, scan) -> {
+            if (scan == null) {
+                scan = new Scan();
+            }
+            scan.watchers.add(watcher);
+            return scan;
+        });
+        watcher.end.whenComplete((status, error) -> unwatch(imageUuid, watcher));
+
+        startPolling();
+        return watcher.end;
+    }
+
+    private void unwatch(String imageUuid, Watcher watcher) {
+        scans.computeIfPresent(imageUuid, (uuid, scan) -> {
+            scan.watchers.remove(watcher);
+            return scan.watchers.isEmpty() ? null : scan;
+        });
+        stopPollingIfIdle();
+    }
+
+    /*
+     * Hands the status of an ended scan to the builds waiting for it. Returns the number of builds that wait.
+     */
+    int scanEnded(String imageUuid, ScanStatus status) {
+        Scan scan = scans.get(imageUuid);
+        if (scan == null) {
+            return 0;
+        }
+        int watchers = scan.watchers.size();
+        scan.deliver(status);
+        return watchers;
+    }
+
+    int getWatchedScans() {
+        return scans.size();
+    }
+
+    private synchronized void startPolling() {
+        if (executor == null) {
+            executor = Executors.newScheduledThreadPool(
+                    THREADS,
+                    new NamingThreadFactory(new DaemonThreadFactory(), "VdooVision scan status")
+            );
+        }
+        if (ticker == null) {
+            ScheduledExecutorService pollExecutor = executor;
+            ticker = executor.scheduleWithFixedDelay(() -> pollDueScans(pollExecutor), 0, 1, TimeUnit.SECONDS);
+        }
+    }
+
+    /*
+     * Scans are only added before startPolling and removed before this is called, both checked under the same lock,
+     * so the ticker always runs while there are scans.
+     */
+    private synchronized void stopPollingIfIdle() {
+        if (ticker != null && scans.isEmpty()) {
+            ticker.cancel(false);
+            ticker = null;
+        }
+    }
+
+    // Called when Jenkins stops, see VdooGlobalConfiguration.shutdown
+    synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+            ticker = null;
+        }
+    }
+
+    private void pollDueScans(ScheduledExecutorService executor) {
+        long now = System.currentTimeMillis();
+        List<Scan> dueScans = scans.values().stream()
+                .filter(scan -> !scan.isPolling && scan.nextPollMillis <= now)
+                .sorted(Comparator.comparingLong(scan -> scan.nextPollMillis))
+                .limit(MAX_POLLS_PER_SECOND)
+                .collect(Collectors.toList());
+
+        for (Scan scan : dueScans) {
+            scan.isPolling = true;
+            try {
+                executor.execute(scan::poll);
+            } catch (RejectedExecutionException e) {
+                // Jenkins is stopping
+                scan.isPolling = false;
+                return;
+            }
+        }
+    }
+
+    private static final class Watcher {
+        final StatusSource source;
+        final StatusListener listener;
+        final CompletableFuture<ScanStatus> end = new CompletableFuture<>();
+
+        Watcher(StatusSource source, StatusListener listener) {
+            this.source = source;
+            this.listener = listener;
+        }
+    }
+
+    private static final class Scan {
+        final Set<Watcher> watchers = ConcurrentHashMap.newKeySet();
+        volatile long nextPollMillis;
+        volatile boolean isPolling;
+
+        // Only touched by the thread that polls the scan
+        private int polls;
+        private String etag;
+        private ScanStatus lastStatus;
+
+        void poll() {
+            long pollDelayMillis = 0;
+            try {
+                Watcher watcher = watchers.stream().findFirst().orElse(null);
+                if (watcher == null) {
+                    return;
+                }
+
+                StatusPollPolicy policy = StatusPollPolicy.current();
+                try {
+                    VdooHttpClient.ConditionalResponse<ScanStatus> response = watcher.source.fetch(etag);
+                    polls++;
+                    if (!response.isNotModified()) {
+                        lastStatus = response.getValue();
+                        etag = response.getEtag();
+                    }
+                    pollDelayMillis = policy.getPollDelayMillis(polls, response.getRetryAfterMillis());
+
+                    deliver(lastStatus);
+                } catch (VdooApiException e) {
+                    if (isRejected(e)) {
+                        // The status could not be fetched for this build, the other builds of the scan try right away
+                        watcher.end.completeExceptionally(new AbortException(e.getMessage()));
+                    } else {
+                        // The API is overloaded or out of reach, wait as long as it asks to or back off as if the
+                        // status was polled. The scan timeout bounds how long this can last.
+                        polls++;
+                        pollDelayMillis = policy.getPollDelayMillis(polls, e.getRetryAfterMillis());
+                        deliverUnavailable();
+                    }
+                } catch (IOException e) {
+                    polls++;
+                    pollDelayMillis = policy.getPollDelayMillis(polls, -1);
+                    deliverUnavailable();
+                } catch (Throwable t) {
+                    watcher.end.completeExceptionally(t);
+                }
+            } finally {
+                nextPollMillis = System.currentTimeMillis() + pollDelayMillis;
+                isPolling = false;
+            }
+        }
+
+        /*
+         * Only a client error, other than too many requests, fails the wait right away. Connection failures (status
+         * 0) and server errors are retried like a throttled poll.
+         */
+        private static boolean isRejected(VdooApiException e) {
+            int statusCode = e.getStatusCode();
+            return statusCode >= 400 && statusCode < 500 && !e.isRetryable();
+        }
+
+        synchronized void deliver(ScanStatus status) {
+            for (Watcher watcher : watchers) {
+                if (watcher.end.isDone()) {
+                    continue;
+                }
+                try {
+                    if (watcher.listener.onStatus(status)) {
+                        watcher.end.complete(status);
+                    }
+                } catch (Throwable t) {
+                    watcher.end.completeExceptionally(t);
+                }
+            }
+        }
+
+        synchronized void deliverUnavailable() {
+            for (Watcher watcher : watchers) {
+                if (watcher.end.isDone()) {
+                    continue;
+                }
+                try {
+                    watcher.listener.onStatusUnavailable();
+                } catch (Throwable t) {
+                    watcher.end.completeExceptionally(t);
+                }
+            }
+        }
+    }
+}
@@ -1,29 +1,52 @@
 package com.vdoo.vision.plugin;
 
 import java.io.*;
-import java.net.URL;
+import java.lang.ref.SoftReference;
 import java.util.Map;
 import java.util.List;
-import java.util.Scanner;
+import java.util.HashMap;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Stream;
-import java.net.HttpURLConnection;
 import java.util.stream.Collectors;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 
-import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import hudson.FilePath;
 import jenkins.MasterToSlaveFileCallable;
 import hudson.remoting.VirtualChannel;
+import hudson.model.Job;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.util.Secret;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
 import hudson.AbortException;
 import jenkins.model.RunAction2;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import com.vdoo.sdk.ScanMetrics;
+import com.vdoo.sdk.ScanStatus;
+import com.vdoo.sdk.UploadIndex;
+import com.vdoo.sdk.UploadStatistics;
+import com.vdoo.sdk.VdooApiException;
+import com.vdoo.sdk.VdooHttpClient;
 import com.vdoo.sdk.VdooSDK;
 
 public class ScannerAction implements RunAction2, Serializable {
@@ -36,73 +59,163 @@ public class ScannerAction implements RunAction2, Serializable {
     private String maxHighlightedExposures;
     private String maxHighlightedCVEs;
     private String maxMaliciousFiles;
+    private String maxNewCVEs;
     private String baseApi;
     private String firmwareLocation;
     private Integer artifactId;
     private String firmwareUUID;
     private Boolean waitForResults;
-    private String reportLink;
-    private String fwName;
-    private TaskListener listener;
+    private int reportDownloadConcurrency;
+    private ReportFormat reportFormat;
+    private boolean reuseScannedImages;
+    // KB/s sent by the upload of the image, 0 for no limit
+    private int maxUploadRate;
     private File artifactsDir;
     private long runQueueId;
+    // Numbers the reports of a build that scans several images, 0 for the report of a single image
+    private int reportNumber;
 
-    private JsonNode analysisResults;
-    private JsonNode highlightedIssues;
-    private JsonNode statusJson;
-    private Map<String, Integer> statusToInt;
-    private String defaultBaseApi = "https://prod.vdoo.io";
-
+    // Summary of the report, the full report is only read from the artifacts when it is needed
+    private String reportLink;
+    private String fwName;
+    private String artifactName;
+    private String threatLevel;
+    private int highlightedExposuresCount;
+    private int highlightedCVEsCount;
+    private int maliciousFilesCount;
+
+    // Summary of what changed since the report of the reference build, see FindingsDiff. Null if there was none.
+    private Integer diffReferenceBuild;
+    private int newCVEsCount;
+    private int fixedCVEsCount;
+    private int newExposuresCount;
+    private int changedComponentsCount;
+
+    // Kept in build.xml by older versions. Only read so their builds still load, the report parts are summarised by
+    // readResolve.
+    @Deprecated
+    private transient JsonNode analysisResults;
+    @Deprecated
+    private transient JsonNode highlightedIssues;
+    @Deprecated
+    private transient Map<String, Integer> statusToInt;
+    @Deprecated
+    private transient String defaultBaseApi;
+
+    private transient TaskListener listener;
+    private transient SoftReference<JsonNode> analysisResultsCache;
+    private transient SoftReference<JsonNode> highlightedIssuesCache;
+    private transient SoftReference<FindingsDiff> findingsDiffCache;
+    private transient Map<String, SoftReference<ReportIndex>> reportIndexCache;
     private transient Run run;
+    private transient long lastLoggedWaitMinutes;
+    private transient String lastLoggedStatus;
 
     private static final long serialVersionUID = 1;
 
-    public ScannerAction(Secret vdooToken, String failThreshold, String maxHighlightedIssues,
-                        String maxHighlightedExposures, String maxHighlightedCVEs, String maxMaliciousFiles,
-                        Integer artifactId, String firmwareLocation,
-                        String baseApi, Boolean waitForResults, TaskListener listener, Run<?, ?> run, FilePath workspace)
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    // Successful builds looked back at for the reference report of the findings diff
+    private static final int MAX_REFERENCE_BUILDS = 10;
+
+    private static final int DEFAULT_FINDINGS_PAGE_SIZE = 50;
+    private static final int MAX_FINDINGS_PAGE_SIZE = 500;
+
+    public static final int DEFAULT_REPORT_DOWNLOAD_CONCURRENCY = 3;
+
+    private static final String DEFAULT_BASE_API = "https://prod.vdoo.io";
+
+    private static final Map<String, Integer> STATUS_TO_INT = Stream.of(new Object[][]{
+        {"None", 20},
+        {"Very High",  10},
+        {"High",  8},
+        {"Medium",  6},
+        {"Low",  4},
+        {"Very Low",  2},
+    }).collect(Collectors.toMap(data -> (String) data[0], data -> (Integer) data[1]));
+
+    // Report parts that are returned by the API as paginated lists
+    private static final String[] PAGINATED_REPORT_PARTS = {
+        "software_components",
+        "hardware_components",
+        "cves",
+        "exposures",
+        "malicious_files",
+        "potential_zero_days/zero_days",
+        "potential_zero_days/weaknesses",
+    };
+
+    public ScannerAction(ScanSettings settings, TaskListener listener, Run<?, ?> run, FilePath workspace)
             throws IOException, InterruptedException {
+        this(settings, listener, run);
+
+        upload(workspace);
+        if (waitForResults) {
+            waitForEndStatus();
+        }
+        finishScan();
+    }
 
-        this.vdooToken = vdooToken;
+    /*
+     * Validates the settings without starting the scan, so the Pipeline step can run the phases of the scan itself.
+     */
+    ScannerAction(ScanSettings settings, TaskListener listener, Run<?, ?> run) throws AbortException {
+        this.vdooToken = settings.getVdooToken();
         if (vdooToken == null || vdooToken.getPlainText().equals("")) {
             throw new AbortException(Messages.ScannerAction_TokenEmptyError());
         }
         this.listener = listener;
-        this.failThreshold = failThreshold;
-        this.maxHighlightedIssues = maxHighlightedIssues;
-        this.maxHighlightedExposures = maxHighlightedExposures;
-        this.maxHighlightedCVEs = maxHighlightedCVEs;
-        this.maxMaliciousFiles = maxMaliciousFiles;
-        this.waitForResults = waitForResults;
+        this.failThreshold = settings.getFailThreshold();
+        this.maxHighlightedIssues = settings.getMaxHighlightedIssues();
+        this.maxHighlightedExposures = settings.getMaxHighlightedExposures();
+        this.maxHighlightedCVEs = settings.getMaxHighlightedCVEs();
+        this.maxMaliciousFiles = settings.getMaxMaliciousFiles();
+        this.maxNewCVEs = settings.getMaxNewCVEs();
+        this.waitForResults = settings.getWaitForResults();
+
+        // Not set in jobs configured before this option existed, it is on by default
+        this.reuseScannedImages = settings.getReuseScannedImages() == null || settings.getReuseScannedImages();
+
+        this.reportDownloadConcurrency = DEFAULT_REPORT_DOWNLOAD_CONCURRENCY;
+        String reportDownloadConcurrency = settings.getReportDownloadConcurrency();
+        if (reportDownloadConcurrency != null && !reportDownloadConcurrency.equals("")) {
+            this.reportDownloadConcurrency = Math.max(1, Integer.parseInt(reportDownloadConcurrency));
+        }
+
+        this.reportFormat = ReportFormat.of(settings.getReportFormat());
+
+        String maxUploadRate = settings.getMaxUploadRate();
+        if (maxUploadRate != null && !maxUploadRate.equals("")) {
+            this.maxUploadRate = Math.max(0, Integer.parseInt(maxUploadRate));
+        } else {
+            VdooGlobalConfiguration config = VdooGlobalConfiguration.get();
+            this.maxUploadRate = config == null ? 0 : config.getMaxUploadRatePerScan();
+        }
 
         this.runQueueId = run.getQueueId();
         this.artifactsDir = run.getArtifactsDir();
 
-        this.baseApi = baseApi;
+        this.baseApi = settings.getBaseApi();
         if (baseApi == null || baseApi.equals("")) {
-            this.baseApi = defaultBaseApi;
+            this.baseApi = DEFAULT_BASE_API;
         }
         if (this.baseApi.endsWith("/")) {
             this.baseApi = this.baseApi.substring(0, this.baseApi.length() - 1);
         }
 
-        this.artifactId = artifactId;
+        this.artifactId = settings.getProductId();
         if (this.artifactId == null) {
             throw new AbortException(Messages.ScannerAction_ProductError());
         }
 
-        this.firmwareLocation = firmwareLocation;
+        this.firmwareLocation = settings.getFirmwareLocation();
         this.run = run;
+    }
 
-        statusToInt = Stream.of(new Object[][]{
-            {"None", 20},
-            {"Very High",  10},
-            {"High",  8},
-            {"Medium",  6},
-            {"Low",  4},
-            {"Very Low",  2},
-        }).collect(Collectors.toMap(data -> (String) data[0], data -> (Integer) data[1]));
-
+    /*
+     * Uploads the image from the node of the workspace.
+     */
+    void upload(FilePath workspace) throws IOException, InterruptedException {
         FilePath file = new FilePath(new File(firmwareLocation));
         if (!file.exists()) {
             file = new FilePath(workspace, firmwareLocation);
@@ -115,81 +228,237 @@ public class ScannerAction implements RunAction2, Serializable {
             }
         }
 
-        try {
-            PrintStream logger = listener.getLogger();
+        VdooGlobalConfiguration config = VdooGlobalConfiguration.get();
+        int maxNodeUploadRate = config == null ? 0 : config.getMaxUploadRatePerNode();
+
+        try (UploadQuota.Lease lease = UploadQuota.get().acquire(listener.getLogger())) {
+            UploadResult result = file.act(new Analyze(lease.getParts(), maxNodeUploadRate));
+            result.metrics.mergeInto(ScanMetrics.get());
+            if (result.error != null) {
+                throw result.error;
+            }
+            firmwareUUID = result.firmwareUUID;
+        }
+
+        if (!Boolean.TRUE.equals(waitForResults)) {
+            listener.getLogger().println(Messages.ScannerAction_NotWaitingForResults());
+        }
+    }
+
+    /*
+     * Scans an image that was already uploaded, instead of uploading one.
+     */
+    void useUploadedImage(String firmwareUUID) {
+        this.firmwareUUID = firmwareUUID;
+    }
+
+    /*
+     * Saves the report of the finished scan and fails the build if one of the thresholds was passed.
+     */
+    void finishScan() throws IOException, InterruptedException {
+        saveReport();
+        checkThresholds();
+
+        listener.getLogger().println(Messages.ScannerAction_ScanFinished());
+    }
+
+    void saveReport() throws IOException, InterruptedException {
+        if (saveReportArtifact(listener.getLogger())) {
+            saveFindingsDiff();
+            recordTrend();
+        }
+    }
+
+    /*
+     * Saves the ids of the findings of the report, and what changed since the same image was scanned by the last
+     * successful build that saved them. Both are computed from the ids, see FindingIds and FindingsDiff.
+     */
+    private void saveFindingsDiff() throws IOException {
+        File reportDirectory = getReportDirectory();
+        FindingIds findingIds = FindingIds.write(reportDirectory, getReportFormat());
+
+        FindingIds referenceIds = null;
+        Run<?, ?> reference = run == null ? null : (Run<?, ?>) run.getPreviousSuccessfulBuild();
+        for (int i = 0; reference != null && referenceIds == null && i < MAX_REFERENCE_BUILDS; i++) {
+            ScannerAction referenceReport = findReferenceReport(reference);
+            if (referenceReport != null) {
+                try {
+                    referenceIds = FindingIds.load(referenceReport.getReportDirectory());
+                } catch (IOException e) {
+                    // A truncated or corrupt file of an older build is as good as a missing one
+                    listener.getLogger().println(String.format(
+                            Messages.ScannerAction_ReferenceIdsUnreadable(), reference.getNumber(), e.getMessage()));
+                }
+            }
+            if (referenceIds == null) {
+                reference = (Run<?, ?>) reference.getPreviousSuccessfulBuild();
+            }
+        }
+        if (referenceIds == null) {
+            listener.getLogger().println(Messages.ScannerAction_NoReferenceBuild());
+            return;
+        }
 
-            firmwareUUID = file.act(new Analyze());
+        FindingsDiff diff = FindingsDiff.compute(reference.getNumber(), findingIds, referenceIds);
+        diff.write(reportDirectory);
+        findingsDiffCache = new SoftReference<>(diff);
+
+        diffReferenceBuild = diff.getReferenceBuild();
+        newCVEsCount = diff.getNewCves().size();
+        fixedCVEsCount = diff.getFixedCves().size();
+        newExposuresCount = diff.getNewExposures().size();
+        changedComponentsCount = diff.getChangedComponents().size();
+        listener.getLogger().println(String.format(
+                Messages.ScannerAction_FindingsDiff(),
+                diffReferenceBuild,
+                newCVEsCount,
+                fixedCVEsCount,
+                newExposuresCount,
+                changedComponentsCount
+        ));
+    }
 
-            saveReportArtifact(logger);
-            saveReportAttributesInJobFile();
-            checkThresholds();
+    /*
+     * The report of the same image in another build: the one with the same image location, or the only report of
+     * the build if this is the only report of this build.
+     */
+    private ScannerAction findReferenceReport(Run<?, ?> build) {
+        List<ScannerAction> reports = build.getActions(ScannerAction.class);
+        for (ScannerAction report : reports) {
+            if (report.firmwareLocation != null && report.firmwareLocation.equals(firmwareLocation)) {
+                return report;
+            }
+        }
+        if (reportNumber == 0 && reports.size() == 1) {
+            return reports.get(0);
+        }
+        return null;
+    }
 
-            logger.println(Messages.ScannerAction_ScanFinished());
+    /*
+     * Appends the summary of the report to the trend of the job, see FindingsTrend. The trend is not worth failing
+     * the build over.
+     */
+    private void recordTrend() {
+        if (run == null || threatLevel == null) {
+            return;
+        }
+        try {
+            FindingsTrend.append(((Job<?, ?>) run.getParent()).getRootDir(), new FindingsTrend.Record(
+                    run.getNumber(),
+                    reportNumber,
+                    threatLevel,
+                    highlightedExposuresCount,
+                    highlightedCVEsCount,
+                    maliciousFilesCount
+            ));
         } catch (IOException e) {
-            throw e;
+            listener.getLogger().println(String.format(Messages.ScannerAction_TrendFailed(), e.getMessage()));
         }
     }
 
-    // if 'file' is on a different node, this FileCallable will
-    // be transferred to that node and executed there.
-    private final class Analyze extends MasterToSlaveFileCallable<String> {
+    // The UUID of the uploaded image, or the error that failed the upload, and the metrics of the calls made on the
+    // node to upload it
+    private static final class UploadResult implements Serializable {
         private static final long serialVersionUID = 1;
 
-        @Override public String invoke(File f, VirtualChannel channel) throws IOException, InterruptedException {
-            PrintStream logger = listener.getLogger();
-            VdooSDK sdk = new VdooSDK();
+        private final String firmwareUUID;
+        private final ScanMetrics.Snapshot metrics;
+        private final IOException error;
 
-            firmwareUUID = sdk.analyzeImage(
-                    baseApi,
-                    String.valueOf(artifactId),
-                    f.getName(),
-                    f.getAbsolutePath(),
-                    vdooToken.getPlainText()
-            );
+        UploadResult(String firmwareUUID, ScanMetrics.Snapshot metrics, IOException error) {
+            this.firmwareUUID = firmwareUUID;
+            this.metrics = metrics;
+            this.error = error;
+        }
+    }
 
-            logger.println(String.format(
-                    Messages.ScannerAction_FirmwareUploadSuccess(),
-                    firmwareUUID
-            ));
+    // if 'file' is on a different node, this FileCallable will
+    // be transferred to that node and executed there.
+    private final class Analyze extends MasterToSlaveFileCallable<UploadResult> {
+        private static final long serialVersionUID = 1;
 
-            if (!waitForResults) {
-                logger.println(Messages.ScannerAction_NotWaitingForResults());
-                return firmwareUUID;
-            }
+        // The listener of the action is not serialized along with it
+        private final TaskListener listener = ScannerAction.this.listener;
+        private final int maxUploadConcurrency;
+        private final int maxNodeUploadRate;
 
-            String status = waitForEndStatus(logger);
-            boolean didFail = false;
-            String failReason = "";
+        Analyze(int maxUploadConcurrency, int maxNodeUploadRate) {
+            this.maxUploadConcurrency = maxUploadConcurrency;
+            this.maxNodeUploadRate = maxNodeUploadRate;
+        }
 
-            if (status.equals("Failure")) {
-                failReason = statusJson.get("analysis_status").get("current").get("error_code").textValue();
-                didFail = true;
+        @Override public UploadResult invoke(File f, VirtualChannel channel) throws IOException, InterruptedException {
+            PrintStream logger = listener.getLogger();
+            VdooSDK sdk = new VdooSDK();
+            sdk.setMaxUploadConcurrency(maxUploadConcurrency);
+            sdk.setMaxUploadBytesPerSecond(maxUploadRate * 1024L);
+            // This JVM is the one of the node, so its limit is shared by all the uploads of the node
+            VdooSDK.setMaxJvmUploadBytesPerSecond(maxNodeUploadRate * 1024L);
+            if (reuseScannedImages) {
+                sdk.setUploadIndex(new UploadIndex(UploadIndex.getDefaultFile()));
             }
-            if (status.equals("timeout")) {
-                failReason = status;
-                didFail = true;
+
+            try {
+                firmwareUUID = sdk.analyzeImage(
+                        baseApi,
+                        String.valueOf(artifactId),
+                        f.getName(),
+                        f.getAbsolutePath(),
+                        vdooToken.getPlainText()
+                );
+            } catch (IOException e) {
+                // The retries and errors of a failed upload are the samples most worth keeping
+                return new UploadResult(null, sdk.getMetrics().snapshot(), e);
             }
 
-            if (didFail) {
-                String failMessage = String.format(
-                        Messages.ScannerAction_FirmwareScanFailure(),
-                        failReason,
+            if (sdk.wasLastUploadReused()) {
+                logger.println(String.format(
+                        Messages.ScannerAction_FirmwareUploadSkipped(),
+                        sdk.getLastImageSha256(),
                         firmwareUUID
-                );
+                ));
+            } else {
+                logger.println(String.format(
+                        Messages.ScannerAction_FirmwareUploadSuccess(),
+                        firmwareUUID
+                ));
+            }
 
-                logger.println(failMessage);
-                throw new AbortException(failMessage);
+            UploadStatistics uploadStatistics = sdk.getLastUploadStatistics();
+            if (uploadStatistics != null && uploadStatistics.getResumedParts() > 0) {
+                logger.println(String.format(
+                        Messages.ScannerAction_FirmwareUploadResumed(),
+                        uploadStatistics.getResumedParts(),
+                        uploadStatistics.getResumedParts() + uploadStatistics.getTotalParts()
+                ));
+            }
+            if (uploadStatistics != null) {
+                logger.println(String.format(
+                        Messages.ScannerAction_UploadStatistics(),
+                        uploadStatistics.getTotalParts(),
+                        uploadStatistics.getWorkerCount(),
+                        uploadStatistics.getPeakConcurrency(),
+                        uploadStatistics.getElapsedMillis() / 1000.0,
+                        uploadStatistics.formatWorkerUtilisation()
+                ));
+                logger.println(String.format(
+                        Messages.ScannerAction_UploadThroughput(),
+                        uploadStatistics.getUploadedBytes() / (1024.0 * 1024.0),
+                        uploadStatistics.getBytesPerSecond() / 1024.0,
+                        formatUploadRate(uploadStatistics.getMaxBytesPerSecond()),
+                        formatUploadRate(uploadStatistics.getMaxJvmBytesPerSecond())
+                ));
             }
-            return firmwareUUID;
+            return new UploadResult(firmwareUUID, sdk.getMetrics().snapshot(), null);
         }
     }
 
-    /*
-     * Saving report attributes inside job's build.xml file so it will be available even after jenkins is restarted
-     */
-    private void saveReportAttributesInJobFile() {
-        setReportLink();
-        setFwName();
+    private static String formatUploadRate(long bytesPerSecond) {
+        if (bytesPerSecond <= 0) {
+            return Messages.ScannerAction_UploadRateUnlimited();
+        }
+        return String.format("%d KB/s", bytesPerSecond / 1024);
     }
 
     private boolean isThresholdPassed(String threshold, int actual) {
@@ -202,10 +471,10 @@ public class ScannerAction implements RunAction2, Serializable {
         return false;
     }
 
-    private void checkThresholds() throws AbortException {
+    void checkThresholds() throws AbortException {
         String failMessage = null;
 
-        if (statusToInt.get(getThreatLevel()) >= statusToInt.get(failThreshold)) {
+        if (STATUS_TO_INT.get(getThreatLevel()) >= STATUS_TO_INT.get(failThreshold)) {
             failMessage = String.format(Messages.ScannerAction_ThreatLevelThresholdPassed(),
                     getThreatLevel(),
                     failThreshold
@@ -231,51 +500,55 @@ public class ScannerAction implements RunAction2, Serializable {
                     getMaliciousFiles(),
                     maxMaliciousFiles);
         }
+        else if (diffReferenceBuild != null && isThresholdPassed(maxNewCVEs, getNewCVEsCount())) {
+            failMessage = String.format(Messages.ScannerAction_NewCvesThresholdPassed(),
+                    diffReferenceBuild,
+                    getNewCVEsCount(),
+                    maxNewCVEs);
+        }
 
         if (failMessage != null) {
             throw new AbortException(failMessage);
         }
     }
 
-    private Boolean saveReportArtifact(PrintStream logger) throws IOException {
-        File artifactDir = new File(run.getArtifactsDir(), REPORT_DIRECTORY_NAME + run.getQueueId());
+    private Boolean saveReportArtifact(PrintStream logger) throws IOException, InterruptedException {
+        File artifactDir = getReportDirectory();
         Boolean wasArtifactDirCreated = artifactDir.mkdirs();
         if (wasArtifactDirCreated) {
-            JsonNode analysisResults = dumpReportPart(artifactDir,"analysis_results", false);
-            JsonNode highlightedIssues = dumpReportPart(artifactDir,"highlighted_issues", false);
-            JsonNode softwareComponents =  dumpReportPart(artifactDir,"software_components", true);
-            JsonNode hardwareComponents = dumpReportPart(artifactDir,"hardware_components", true);
-            JsonNode cves = dumpReportPart(artifactDir,"cves", true);
-            JsonNode exposures =  dumpReportPart(artifactDir,"exposures", true);
-            JsonNode maliciousFiles = dumpReportPart(artifactDir,"malicious_files", true);
-            JsonNode zero_days = dumpReportPart(artifactDir,"potential_zero_days/zero_days", true);
-            JsonNode weaknesses = dumpReportPart(artifactDir,"potential_zero_days/weaknesses", true);
-
-            ObjectMapper mapper = new ObjectMapper();
-            JsonNode aggregatedReport = mapper.createObjectNode();
-            ((ObjectNode) aggregatedReport).set("analysis_summary", analysisResults);
-            ((ObjectNode) aggregatedReport).set("highlighted_issues", highlightedIssues);
-
-            JsonNode components = mapper.createObjectNode();
-            ((ObjectNode) aggregatedReport).set("components", components);
-            ((ObjectNode) components).set("software_components", softwareComponents);
-            ((ObjectNode) components).set("hardware_components", hardwareComponents);
-
-            JsonNode allSecurityIssues = mapper.createObjectNode();
-            ((ObjectNode) aggregatedReport).set("all_security_issues", allSecurityIssues);
-            ((ObjectNode) allSecurityIssues).set("exposures", exposures);
-            ((ObjectNode) allSecurityIssues).set("cves", cves);
-            ((ObjectNode) allSecurityIssues).set("zero_days", zero_days);
-            ((ObjectNode) allSecurityIssues).set("weaknesses", weaknesses);
-            ((ObjectNode) allSecurityIssues).set("malicious_files", maliciousFiles);
-
-            File path = new File(artifactDir, "all_findings.json");
-            Writer writer = new OutputStreamWriter(new FileOutputStream(path.toString()), "UTF-8");
-            writer.write(aggregatedReport.toPrettyString());
-            writer.close();
-
-            this.analysisResults = analysisResults;
-            this.highlightedIssues = highlightedIssues;
+            // Every part is written to its own file, so the parts can be fetched independently of each other
+            ReportCache reportCache = ReportCache.get();
+            ExecutorService executor = Executors.newFixedThreadPool(
+                    reportDownloadConcurrency,
+                    new NamingThreadFactory(new DaemonThreadFactory(), "VdooVision report download")
+            );
+            try {
+                Future<JsonNode> analysisResults = executor.submit(
+                        () -> dumpReportPart(artifactDir, "analysis_results", reportCache));
+                Future<JsonNode> highlightedIssues = executor.submit(
+                        () -> dumpReportPart(artifactDir, "highlighted_issues", reportCache));
+
+                List<Future<Long>> paginatedParts = new ArrayList<>();
+                for (String reportPartName : PAGINATED_REPORT_PARTS) {
+                    paginatedParts.add(executor.submit(() -> {
+                        long entries = streamReportPart(artifactDir, reportPartName, reportCache);
+                        indexReportPart(artifactDir, reportPartName);
+                        return entries;
+                    }));
+                }
+
+                summarise(getReportPart(analysisResults), getReportPart(highlightedIssues));
+                for (Future<Long> paginatedPart : paginatedParts) {
+                    getReportPart(paginatedPart);
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+
+            ReportManifest.writeAggregatedReport(artifactDir, getReportFormat());
+            recordArtifactWritten(new File(artifactDir, getReportFormat().hasAggregatedReport()
+                    ? ReportManifest.ALL_FINDINGS_FILE_NAME
+                    : ReportManifest.FILE_NAME));
         } else {
             logger.println(Messages.ScannerAction_ArtifactFailed());
         }
@@ -283,135 +556,382 @@ public class ScannerAction implements RunAction2, Serializable {
         return wasArtifactDirCreated;
     }
 
-    private ArrayNode buildReportPartJson(String report_part_name) throws IOException {
-        JsonNode reportPart = callUrl(
-                "/v3/images/" + firmwareUUID + "/" + report_part_name,
-                "GET",
-                null
-        );
+    private static <T> T getReportPart(Future<T> reportPart) throws IOException, InterruptedException {
+        try {
+            return reportPart.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
 
-        if (reportPart.get("next") == null) {
-            ArrayNode an = JsonNodeFactory.instance.arrayNode();
-            an.add(reportPart);
-            return an;
-        } else {
-            String next_page_url = reportPart.get("next").asText();
-            ArrayNode report = (ArrayNode) reportPart.get("results");
-            while (!next_page_url.equals("null")) {
-                reportPart = callUrl(
-                        next_page_url,
+    private static String reportPartFileName(String reportPartName) {
+        return reportPartName.replace("potential_zero_days/", "");
+    }
+
+    /*
+     * Writes a report part to its part file, from the report cache if the cached part is still valid.
+     */
+    private JsonNode dumpReportPart(File artifactDir, String reportPartName, ReportCache reportCache)
+            throws IOException {
+        String fileName = reportPartFileName(reportPartName) + ".json";
+        File path = new File(artifactDir, fileName);
+        String url = "/v3/images/" + firmwareUUID + "/" + reportPartName;
+        String cacheFileName = getReportFormat().getCacheFileName(fileName);
+
+        String cachedEtag = reportCache.getEtag(firmwareUUID, cacheFileName);
+        VdooHttpClient.ConditionalResponse<JsonNode> reportPart = callUrlIfModified(url, cachedEtag, JsonNode.class);
+        if (reportPart.isNotModified()) {
+            if (reportCache.copyTo(firmwareUUID, cacheFileName, path)) {
+                logReportPartCached(reportPartName);
+                return MAPPER.readTree(path);
+            }
+            // Evicted meanwhile
+            reportPart = callUrlIfModified(url, null, JsonNode.class);
+        }
+
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(path), StandardCharsets.UTF_8)) {
+            writer.write(getReportFormat().isPretty()
+                    ? reportPart.getValue().toPrettyString()
+                    : reportPart.getValue().toString());
+        }
+        recordArtifactWritten(path);
+        reportCache.put(firmwareUUID, cacheFileName, path, reportPart.getEtag());
+        return reportPart.getValue();
+    }
+
+    /*
+     * Follows the 'next' links of a paginated report part and writes the results of every page to the part file as
+     * soon as the page arrives, so only a single page is held in memory at any time.
+     * The report of an ended scan does not change, so the part is taken from the report cache as a whole if its first
+     * page is still valid.
+     * Returns the number of entries written, or -1 if the part was taken from the report cache.
+     */
+    private long streamReportPart(File artifactDir, String reportPartName, ReportCache reportCache)
+            throws IOException {
+        ReportFormat format = getReportFormat();
+        String fileName = format.getPartFileName(reportPartFileName(reportPartName));
+        File path = new File(artifactDir, fileName);
+        String url = "/v3/images/" + firmwareUUID + "/" + reportPartName;
+        String cacheFileName = format.getCacheFileName(fileName);
+        String cachedEtag = reportCache.getEtag(firmwareUUID, cacheFileName);
+        String etag;
+        long entries = 0;
+        int pages = 0;
+
+        try (JsonGenerator generator = format.createPartGenerator(path)) {
+            format.startPart(generator);
+
+            ReportPageWriter pageWriter = new ReportPageWriter(generator);
+            long pageStart = System.nanoTime();
+            VdooHttpClient.ConditionalResponse<String> firstPage = callUrlIfModified(url, cachedEtag, pageWriter);
+            if (firstPage.isNotModified()) {
+                generator.close();
+                if (reportCache.copyTo(firmwareUUID, cacheFileName, path)) {
+                    logReportPartCached(reportPartName);
+                    return -1;
+                }
+                // Evicted meanwhile
+                return streamReportPart(artifactDir, reportPartName, ReportCache.DISABLED);
+            }
+            ScanMetrics.get().observeNanos(ScanMetrics.Metric.REPORT_PAGE_SECONDS, reportPartFileName(reportPartName),
+                    System.nanoTime() - pageStart);
+            etag = firstPage.getEtag();
+            String nextPageUrl = firstPage.getValue();
+            pages++;
+
+            while (nextPageUrl != null) {
+                generator.flush();
+                pageStart = System.nanoTime();
+                nextPageUrl = callUrl(
+                        nextPageUrl,
                         "GET",
-                        null
+                        pageWriter
                 );
-                report.addAll((ArrayNode) reportPart.get("results"));
-                next_page_url = reportPart.get("next").asText();
+                ScanMetrics.get().observeNanos(ScanMetrics.Metric.REPORT_PAGE_SECONDS,
+                        reportPartFileName(reportPartName), System.nanoTime() - pageStart);
+                pages++;
             }
-            return report;
+            entries = pageWriter.getEntries();
+
+            format.endPart(generator);
         }
+        recordArtifactWritten(path);
+        reportCache.put(firmwareUUID, cacheFileName, path, etag);
+
+        listener.getLogger().println(String.format(
+                Messages.ScannerAction_ReportPartSaved(),
+                reportPartName,
+                entries,
+                pages
+        ));
+        return entries;
     }
 
-    private JsonNode dumpReportPart(File artifactDir, String reportPartName, boolean isArray) throws IOException {
-        String filename = reportPartName.replace("potential_zero_days/", "");
-        File path = new File(artifactDir, filename + ".json");
-        Writer writer = new OutputStreamWriter(new FileOutputStream(path.toString()), "UTF-8");
-        ArrayNode reportJson = buildReportPartJson(reportPartName);
-        JsonNode ret = isArray ? reportJson : reportJson.get(0);
-        writer.write(ret.toPrettyString());
-        writer.close();
-        return ret;
+    private static void recordArtifactWritten(File artifact) {
+        ScanMetrics.get().add(ScanMetrics.Metric.ARTIFACT_BYTES, artifact.getName(), artifact.length());
     }
 
-    private String waitForEndStatus(PrintStream logger) throws IOException, InterruptedException {
-        int maxTries = 60;
-        int currentTry = 0;
+    /*
+     * Indexes the part file for the report page, see ReportIndex.
+     */
+    private void indexReportPart(File artifactDir, String reportPartName) throws IOException {
+        ReportIndex.write(artifactDir, reportPartFileName(reportPartName), getReportFormat());
+    }
 
-        while (currentTry < maxTries)
-        {
-            currentTry += 1;
+    private void logReportPartCached(String reportPartName) {
+        listener.getLogger().println(String.format(
+                Messages.ScannerAction_ReportPartCached(),
+                reportPartName,
+                firmwareUUID
+        ));
+    }
 
-            statusJson = callUrl(
-                "/v3/images/" + firmwareUUID + "/scan_status/",
-                "GET",
-                null
-            );
+    /*
+     * Decodes one page of a paginated report part straight from the response stream, copying every entry of its
+     * 'results' into the part file without materialising the page. Returns the url of the next page, or null on the
+     * last page.
+     * A response without a 'next' field is not paginated and is written as a single entry, as is.
+     */
+    static final class ReportPageWriter implements VdooHttpClient.ResponseHandler<String> {
+        private final JsonGenerator generator;
+        private long entries;
+
+        ReportPageWriter(JsonGenerator generator) {
+            this.generator = generator;
+        }
+
+        // Entries written so far, over all the pages
+        long getEntries() {
+            return entries;
+        }
 
-            String status = statusJson.get("analysis_status").get("current").get("name").textValue();
-            if (status.equals("Success") || status.equals("Failure")) {
-                return status;
+        @Override
+        public String handle(JsonParser parser) throws IOException {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Expected a report part object");
             }
 
-            // Handle the singular minute case - 1 minute, 2 minute**s**:
-            if (currentTry == 1) {
-                logger.println(String.format(
-                        Messages.ScannerAction_ScanWaitMinute(),
-                        currentTry,
-                        status
-                ));
-            } else {
-                logger.println(String.format(
-                        Messages.ScannerAction_ScanWaitMinutes(),
-                        currentTry,
-                        status
-                ));
+            // Fields other than 'next' and a streamed 'results', kept in their original order
+            ObjectNode otherFields = JsonNodeFactory.instance.objectNode();
+            boolean isPaginated = false;
+            boolean wereResultsStreamed = false;
+            String nextPageUrl = null;
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+
+                if (fieldName.equals("next")) {
+                    isPaginated = true;
+                    nextPageUrl = value == JsonToken.VALUE_NULL ? null : parser.getValueAsString();
+                } else if (fieldName.equals("results") && isPaginated && value == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        generator.copyCurrentStructure(parser);
+                        entries++;
+                    }
+                    wereResultsStreamed = true;
+                } else {
+                    otherFields.set(fieldName, parser.readValueAsTree());
+                }
+            }
+
+            if (!isPaginated) {
+                generator.writeTree(otherFields);
+                entries++;
+                return null;
             }
 
-            Thread.sleep(60 * 1000);
+            if (!wereResultsStreamed) {
+                // 'results' arrived before 'next', so it had to be buffered
+                JsonNode results = otherFields.get("results");
+                if (results == null || !results.isArray()) {
+                    throw new JsonParseException(parser, "Paginated report part has no results");
+                }
+                for (JsonNode entry : results) {
+                    generator.writeTree(entry);
+                    entries++;
+                }
+            }
+            return nextPageUrl;
         }
+    }
 
-        return "timeout";
+    /*
+     * Waits on the controller until the scan ends, failing if the scan failed or did not end in time.
+     */
+    private void waitForEndStatus() throws IOException, InterruptedException {
+        CompletableFuture<ScanStatus> end = watchScanStatus();
+        try {
+            end.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            end.cancel(false);
+        }
     }
 
-    private JsonNode callUrl(String urlString, String method, String postParams) throws IOException {
-        if (!urlString.startsWith("http")) {
-            urlString = baseApi + urlString;
+    /*
+     * Has ScanStatusPoller watch the scan. The returned future is completed once the scan ended successfully, and
+     * completed exceptionally if it failed or did not end in time.
+     */
+    CompletableFuture<ScanStatus> watchScanStatus() {
+        return watchScanStatus(System.currentTimeMillis());
+    }
+
+    CompletableFuture<ScanStatus> watchScanStatus(long waitStartMillis) {
+        return ScanStatusPoller.get().watch(
+                firmwareUUID,
+                this::fetchScanStatus,
+                new ScanStatusPoller.StatusListener() {
+                    @Override
+                    public boolean onStatus(ScanStatus status) throws IOException {
+                        return checkScanStatus(status, waitStartMillis);
+                    }
+
+                    // An API that keeps throttling must not hold the build past the scan timeout either
+                    @Override
+                    public void onStatusUnavailable() throws IOException {
+                        checkScanTimeout(waitStartMillis);
+                    }
+                }
+        );
+    }
+
+    /*
+     * Fetches the status of the scan, unless it did not change since the status that was returned with 'etag'.
+     */
+    VdooHttpClient.ConditionalResponse<ScanStatus> fetchScanStatus(String etag) throws IOException {
+        String url = baseApi + "/v3/images/" + firmwareUUID + "/scan_status/";
+        VdooHttpClient.ConditionalResponse<ScanStatus> status = ScanMetrics.get().timed(url, () ->
+                VdooHttpClient.getDefault().getIfModified(url, vdooToken.getPlainText(), etag, ScanStatus.class));
+        ScanMetrics.get().increment(ScanMetrics.Metric.STATUS_POLLS,
+                status.isNotModified() ? "not_modified" : "changed");
+        return status;
+    }
+
+    /*
+     * Returns true if the scan ended successfully, and false if it is still running, in which case the status is
+     * logged. Fails if the scan failed, or if it is still running once the scan timeout passed since the wait
+     * started.
+     */
+    boolean checkScanStatus(ScanStatus scanStatus, long waitStartMillis) throws AbortException {
+        if (scanStatus.isFailure()) {
+            failScan(scanStatus.getErrorCode());
+        }
+        if (scanStatus.isDone()) {
+            return true;
         }
 
-        URL url = new URL(urlString);
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        long waitMillis = checkScanTimeout(waitStartMillis);
+        String status = scanStatus.getName();
+        long waitMinutes = TimeUnit.MILLISECONDS.toMinutes(waitMillis) + 1;
+        PrintStream logger = listener.getLogger();
 
-        connection.setRequestProperty("accept", "application/json");
-        connection.setRequestProperty("Authorization", "Token " + vdooToken.getPlainText());
+        // The status is polled several times a minute at first, only log what changed
+        if (waitMinutes == lastLoggedWaitMinutes && status.equals(lastLoggedStatus)) {
+            return false;
+        }
+        lastLoggedWaitMinutes = waitMinutes;
+        lastLoggedStatus = status;
 
-        HttpURLConnection http = (HttpURLConnection) connection;
-        http.setConnectTimeout(5000);
-        http.setRequestMethod(method);
-        http.setDoOutput(true);
+        // Handle the singular minute case - 1 minute, 2 minute**s**:
+        if (waitMinutes == 1) {
+            logger.println(String.format(
+                    Messages.ScannerAction_ScanWaitMinute(),
+                    waitMinutes,
+                    status
+            ));
+        } else {
+            logger.println(String.format(
+                    Messages.ScannerAction_ScanWaitMinutes(),
+                    waitMinutes,
+                    status
+            ));
+        }
+        return false;
+    }
 
-        if (postParams != null) {
-            byte[] postData = postParams.getBytes(StandardCharsets.UTF_8);
-            int postDataLength = postData.length;
-            connection.setRequestProperty( "Content-Type", "application/x-www-form-urlencoded");
-            connection.setRequestProperty( "charset", "utf-8");
-            connection.setRequestProperty( "Content-Length", Integer.toString( postDataLength ));
-            DataOutputStream wr = new DataOutputStream( connection.getOutputStream());
-            wr.write(postData);
-            wr.close();
+    /*
+     * Fails if the scan timeout passed since the wait started. Returns how long the build has waited.
+     */
+    long checkScanTimeout(long waitStartMillis) throws AbortException {
+        long waitMillis = System.currentTimeMillis() - waitStartMillis;
+        if (waitMillis >= StatusPollPolicy.current().getScanTimeoutMillis()) {
+            failScan("timeout");
         }
+        return waitMillis;
+    }
 
-        try {
-            InputStream responseStream = connection.getInputStream();
-            Scanner s = new Scanner(responseStream, "UTF-8").useDelimiter("\\A");
-            String result = s.hasNext() ? s.next() : "";
+    private void failScan(String failReason) throws AbortException {
+        String failMessage = String.format(
+                Messages.ScannerAction_FirmwareScanFailure(),
+                failReason,
+                firmwareUUID
+        );
 
-            ObjectMapper mapper = new ObjectMapper();
-            return mapper.readTree(result);
+        listener.getLogger().println(failMessage);
+        throw new AbortException(failMessage);
+    }
 
-        } catch (IOException e) {
-            InputStream responseStream = connection.getErrorStream();
+    private JsonNode callUrl(String urlString, String method) throws IOException {
+        return callUrl(urlString, method, JsonNode.class);
+    }
 
-            if (responseStream == null) {
-                String error_code = String.valueOf(connection.getResponseCode());
-                throw new AbortException(
-                    "Calling url " + urlString + " returned an error status code: " + error_code
-                );
-            }
+    private <T> T callUrl(String urlString, String method, Class<T> type) throws IOException {
+        if (!urlString.startsWith("http")) {
+            urlString = baseApi + urlString;
+        }
+
+        String url = urlString;
+        try {
+            return ScanMetrics.get().timed(url, () ->
+                    VdooHttpClient.getDefault().call(url, method, vdooToken.getPlainText(), null, type));
+        } catch (VdooApiException e) {
+            throw new AbortException(e.getMessage());
+        }
+    }
 
-            Scanner s = new Scanner(responseStream, "UTF-8").useDelimiter("\\A");
-            String result = s.hasNext() ? s.next() : "";
+    private <T> VdooHttpClient.ConditionalResponse<T> callUrlIfModified(String urlString, String etag, Class<T> type)
+            throws IOException {
+        String url = baseApi + urlString;
+        try {
+            return ScanMetrics.get().timed(url, () ->
+                    VdooHttpClient.getDefault().getIfModified(url, vdooToken.getPlainText(), etag, type));
+        } catch (VdooApiException e) {
+            throw new AbortException(e.getMessage());
+        }
+    }
 
-            ObjectMapper mapper = new ObjectMapper();
-            String error = "Calling url " + urlString + " returned an error:" + mapper.readTree(result).toString();
-            throw new AbortException(error);
+    private <T> VdooHttpClient.ConditionalResponse<T> callUrlIfModified(String urlString, String etag,
+                                                                     VdooHttpClient.ResponseHandler<T> handler)
+            throws IOException {
+        String url = baseApi + urlString;
+        try {
+            return ScanMetrics.get().timed(url, () ->
+                    VdooHttpClient.getDefault().getIfModified(url, vdooToken.getPlainText(), etag, handler));
+        } catch (VdooApiException e) {
+            throw new AbortException(e.getMessage());
+        }
+    }
+
+    private <T> T callUrl(String urlString, String method, VdooHttpClient.ResponseHandler<T> handler)
+            throws IOException {
+        if (!urlString.startsWith("http")) {
+            urlString = baseApi + urlString;
+        }
+
+        String url = urlString;
+        try {
+            return ScanMetrics.get().timed(url, () ->
+                    VdooHttpClient.getDefault().call(url, method, vdooToken.getPlainText(), null, handler));
+        } catch (VdooApiException e) {
+            throw new AbortException(e.getMessage());
         }
     }
 
@@ -423,42 +943,285 @@ public class ScannerAction implements RunAction2, Serializable {
 
     @Override
     public String getDisplayName() {
-        return "Vdoo Scan Report";
+        return reportNumber == 0 ? "Vdoo Scan Report" : "Vdoo Scan Report (" + new File(firmwareLocation).getName() + ")";
     }
 
     @Override
     public String getUrlName() {
-        return "vdoo-report";
+        return reportNumber == 0 ? "vdoo-report" : "vdoo-report-" + reportNumber;
     }
 
-    public String getArtifactName(){
-        return analysisResults.get("artifact_name").textValue();
+    /*
+     * Gives the report of one of the images of a BatchScan its own artifacts directory and page.
+     */
+    void setReportNumber(int reportNumber) {
+        this.reportNumber = reportNumber;
     }
 
-    public String getFwName() {
-        if (fwName == null) {
-            return analysisResults.get("name").textValue();
+    // 0 for the report of a single image
+    int getReportNumber() {
+        return reportNumber;
+    }
+
+    public String getFirmwareLocation() {
+        return firmwareLocation;
+    }
+
+    /*
+     * Keeps what the report page and the thresholds need in build.xml, and the parts themselves only in memory until
+     * they are collected.
+     */
+    private void summarise(JsonNode analysisResults, JsonNode highlightedIssues) {
+        analysisResultsCache = new SoftReference<>(analysisResults);
+        highlightedIssuesCache = new SoftReference<>(highlightedIssues);
+
+        artifactName = analysisResults.path("artifact_name").textValue();
+        fwName = analysisResults.path("name").textValue();
+        reportLink = analysisResults.path("report_link").textValue();
+        threatLevel = analysisResults.path("threat_level").textValue();
+        if (highlightedIssues != null) {
+            highlightedExposuresCount = highlightedIssues.path("exposures").size();
+            highlightedCVEsCount = highlightedIssues.path("cves").size();
+            maliciousFilesCount = highlightedIssues.path("malicious_files").size();
         }
-        return fwName;
     }
 
-    public void setFwName() {
-        if (fwName == null) {
-            fwName = analysisResults.get("name").textValue();
+    protected Object readResolve() {
+        if (analysisResults != null) {
+            summarise(analysisResults, highlightedIssues);
+            analysisResults = null;
+            highlightedIssues = null;
         }
+        return this;
     }
 
-    public String getReportLink() {
-        if (reportLink == null) {
-            reportLink = analysisResults.get("report_link").textValue();
+    /*
+     * The analysis_results part of the report, read from the build artifacts if it is not in memory anymore.
+     * Null if the report was not saved.
+     */
+    public JsonNode getAnalysisResults() {
+        JsonNode analysisResults = analysisResultsCache == null ? null : analysisResultsCache.get();
+        if (analysisResults == null) {
+            analysisResults = readReportPart("analysis_results.json");
+            analysisResultsCache = new SoftReference<>(analysisResults);
         }
-        return reportLink;
+        return analysisResults;
+    }
+
+    /*
+     * The highlighted_issues part of the report, read from the build artifacts if it is not in memory anymore.
+     * Null if the report was not saved.
+     */
+    public JsonNode getHighlightedIssues() {
+        JsonNode highlightedIssues = highlightedIssuesCache == null ? null : highlightedIssuesCache.get();
+        if (highlightedIssues == null) {
+            highlightedIssues = readReportPart("highlighted_issues.json");
+            highlightedIssuesCache = new SoftReference<>(highlightedIssues);
+        }
+        return highlightedIssues;
+    }
+
+    /*
+     * What changed since the report of the reference build, read from the build artifacts if it is not in memory
+     * anymore. Null if the findings were not compared.
+     */
+    public FindingsDiff getFindingsDiff() {
+        if (diffReferenceBuild == null) {
+            return null;
+        }
+        FindingsDiff diff = findingsDiffCache == null ? null : findingsDiffCache.get();
+        if (diff == null) {
+            try {
+                diff = FindingsDiff.load(getReportDirectory());
+            } catch (IOException e) {
+                return null;
+            }
+            findingsDiffCache = new SoftReference<>(diff);
+        }
+        return diff;
+    }
+
+    /*
+     * findings-diff.json of the report, see FindingsDiff.
+     */
+    public void doFindingsDiff(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        // The report is an artifact of the build, readable by the same users as its other artifacts
+        run.checkPermission(Run.ARTIFACTS);
+        File diff = new File(getReportDirectory(), FindingsDiff.FILE_NAME);
+        if (!diff.isFile()) {
+            rsp.sendError(404);
+            return;
+        }
+
+        rsp.setContentType("application/json;charset=UTF-8");
+        Files.copy(diff.toPath(), rsp.getOutputStream());
     }
 
-    public void setReportLink() {
-        if (reportLink == null) {
-            reportLink = analysisResults.get("report_link").textValue();
+    /*
+     * The directory the report artifacts of this action are saved in.
+     */
+    File getReportDirectory() {
+        File buildArtifactsDir = run != null ? run.getArtifactsDir() : artifactsDir;
+        String reportSuffix = reportNumber == 0 ? "" : "-" + reportNumber;
+        return new File(buildArtifactsDir, REPORT_DIRECTORY_NAME + runQueueId + reportSuffix);
+    }
+
+    private JsonNode readReportPart(String fileName) {
+        File path = new File(getReportDirectory(), fileName);
+        if (!path.isFile()) {
+            return null;
+        }
+        try {
+            return MAPPER.readTree(path);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /*
+     * A page of the entries of a report part, for the report page:
+     *   findings?part=cves&severity=High&q=openssl&sort=severity&order=desc&page=0&pageSize=50
+     * 'q' is searched for in the key of the entries (e.g. the CVE id), 'sort' is "key" or "severity" (report order
+     * otherwise). Returns
+     *   {"part": "cves", "total": 1200, "matches": 40, "page": 0, "pageSize": 50, "severities": {...}, "entries": [...]}
+     * where 'severities' counts the entries of the whole part, and the entries are copied from the part file as is.
+     */
+    public void doFindings(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        run.checkPermission(Run.ARTIFACTS);
+        String part = req.getParameter("part");
+        if (part == null || !ReportIndex.isIndexed(part)) {
+            rsp.sendError(400, "Unknown report part");
+            return;
+        }
+
+        File reportDirectory = getReportDirectory();
+        ReportFormat format;
+        ReportIndex index;
+        try {
+            format = ReportManifest.readFormat(reportDirectory);
+            index = getReportIndex(reportDirectory, part, format);
+        } catch (IOException e) {
+            index = null;
+            format = null;
+        }
+        if (index == null) {
+            rsp.sendError(404);
+            return;
+        }
+
+        int pageSize = Math.min(Math.max(parseParameter(req, "pageSize", DEFAULT_FINDINGS_PAGE_SIZE), 1),
+                MAX_FINDINGS_PAGE_SIZE);
+        int page = Math.max(parseParameter(req, "page", 0), 0);
+        int[] matches = index.select(
+                emptyToNull(req.getParameter("severity")),
+                emptyToNull(req.getParameter("q")),
+                req.getParameter("sort"),
+                "desc".equals(req.getParameter("order"))
+        );
+        long pageStart = Math.min((long) page * pageSize, matches.length);
+        long pageEnd = Math.min(pageStart + pageSize, matches.length);
+
+        int[] pagePositions = Arrays.copyOfRange(matches, (int) pageStart, (int) pageEnd);
+        byte[][] pageEntries;
+        try (InputStream partContent = format.openPart(new File(reportDirectory, format.getPartFileName(part)))) {
+            pageEntries = index.readEntries(partContent, pagePositions);
+        }
+
+        rsp.setContentType("application/json;charset=UTF-8");
+        try (JsonGenerator generator = MAPPER.getFactory().createGenerator(rsp.getOutputStream(), JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            generator.writeStringField("part", part);
+            generator.writeNumberField("total", index.size());
+            generator.writeNumberField("matches", matches.length);
+            generator.writeNumberField("page", page);
+            generator.writeNumberField("pageSize", pageSize);
+            generator.writeObjectFieldStart("severities");
+            for (Map.Entry<String, Integer> severity : index.countBySeverity().entrySet()) {
+                generator.writeNumberField(severity.getKey(), severity.getValue());
+            }
+            generator.writeEndObject();
+
+            generator.writeArrayFieldStart("entries");
+            for (byte[] entry : pageEntries) {
+                generator.writeRawValue(new String(entry, StandardCharsets.UTF_8));
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+    }
+
+    /*
+     * The index of a part of the report, read from the build artifacts if it is not in memory anymore.
+     * Null if the part was not saved.
+     */
+    private synchronized ReportIndex getReportIndex(File reportDirectory, String partName, ReportFormat format)
+            throws IOException {
+        if (reportIndexCache == null) {
+            reportIndexCache = new HashMap<>();
         }
+
+        SoftReference<ReportIndex> cachedIndex = reportIndexCache.get(partName);
+        ReportIndex index = cachedIndex == null ? null : cachedIndex.get();
+        if (index == null) {
+            if (!new File(reportDirectory, format.getPartFileName(partName)).isFile()) {
+                return null;
+            }
+            index = ReportIndex.load(reportDirectory, partName, format);
+            reportIndexCache.put(partName, new SoftReference<>(index));
+        }
+        return index;
+    }
+
+    /*
+     * all_findings.json of the report, as saved by the JSON format or rebuilt from the parts of a compact format.
+     */
+    public void doAllFindings(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        run.checkPermission(Run.ARTIFACTS);
+        File reportDirectory = getReportDirectory();
+        if (!new File(reportDirectory, "analysis_results.json").isFile()) {
+            rsp.sendError(404);
+            return;
+        }
+
+        rsp.setContentType("application/json;charset=UTF-8");
+        rsp.setHeader("Content-Disposition", "attachment; filename=" + ReportManifest.ALL_FINDINGS_FILE_NAME);
+        File allFindings = new File(reportDirectory, ReportManifest.ALL_FINDINGS_FILE_NAME);
+        if (allFindings.isFile()) {
+            Files.copy(allFindings.toPath(), rsp.getOutputStream());
+        } else {
+            ReportManifest.writeAllFindings(reportDirectory, rsp.getOutputStream());
+        }
+    }
+
+    /*
+     * The format the report parts are saved in. Builds of older versions have none, they saved JSON.
+     */
+    ReportFormat getReportFormat() {
+        return reportFormat == null ? ReportFormat.JSON : reportFormat;
+    }
+
+    private static int parseParameter(StaplerRequest req, String name, int defaultValue) {
+        try {
+            return Integer.parseInt(req.getParameter(name));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    public String getArtifactName(){
+        return artifactName;
+    }
+
+    public String getFwName() {
+        return fwName;
+    }
+
+    public String getReportLink() {
+        return reportLink;
     }
 
     public Secret getVdooToken() {
@@ -470,7 +1233,7 @@ public class ScannerAction implements RunAction2, Serializable {
     }
 
     public String getThreatLevel() {
-        return analysisResults.get("threat_level").textValue();
+        return threatLevel;
     }
 
     public int getHighlightedIssuesCount() {
@@ -480,24 +1243,36 @@ public class ScannerAction implements RunAction2, Serializable {
     }
 
     public int getHighlightedExposuresCount() {
-        if (highlightedIssues == null) {
-            return 0;
-        }
-        return highlightedIssues.get("exposures").size();
+        return highlightedExposuresCount;
     }
 
     public int getHighlightedCVEsCount() {
-        if (highlightedIssues == null) {
-            return 0;
-        }
-        return highlightedIssues.get("cves").size();
+        return highlightedCVEsCount;
     }
 
     public int getMaliciousFiles() {
-        if (highlightedIssues == null) {
-            return 0;
-        }
-        return highlightedIssues.get("malicious_files").size();
+        return maliciousFilesCount;
+    }
+
+    // The build the findings were compared with, null if they were not
+    public Integer getDiffReferenceBuild() {
+        return diffReferenceBuild;
+    }
+
+    public int getNewCVEsCount() {
+        return newCVEsCount;
+    }
+
+    public int getFixedCVEsCount() {
+        return fixedCVEsCount;
+    }
+
+    public int getNewExposuresCount() {
+        return newExposuresCount;
+    }
+
+    public int getChangedComponentsCount() {
+        return changedComponentsCount;
     }
 
     public Boolean getWaitForResults() {
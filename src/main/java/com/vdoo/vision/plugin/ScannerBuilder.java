@@ -13,6 +13,7 @@ import hudson.tasks.BuildStepDescriptor;
 
 import java.net.URL;
 import java.io.IOException;
+import java.util.List;
 import jenkins.tasks.SimpleBuildStep;
 import org.jenkinsci.Symbol;
 import org.kohsuke.stapler.DataBoundSetter;
@@ -27,9 +28,16 @@ public class ScannerBuilder extends Builder implements SimpleBuildStep {
     private String maxHighlightedExposures;
     private String maxHighlightedCVEs;
     private String maxMaliciousFiles;
+    private String maxNewCVEs;
     private Integer productId;
     private String firmwareLocation;
     private Boolean waitForResults;
+    private String reportDownloadConcurrency;
+    private Boolean reuseScannedImages;
+    private String reportFormat;
+    private String maxUploadRate;
+    private List<ScanImage> images;
+    private String batchConcurrency;
 
     private String baseApi;
 
@@ -60,6 +68,10 @@ public class ScannerBuilder extends Builder implements SimpleBuildStep {
         return maxMaliciousFiles;
     }
 
+    public String getMaxNewCVEs() {
+        return maxNewCVEs;
+    }
+
     public Integer getProductId() {
         return productId;
     }
@@ -86,6 +98,60 @@ public class ScannerBuilder extends Builder implements SimpleBuildStep {
         this.waitForResults = waitForResults;
     }
 
+    public String getReportDownloadConcurrency() {
+        return reportDownloadConcurrency;
+    }
+
+    @DataBoundSetter
+    public void setReportDownloadConcurrency(String reportDownloadConcurrency) {
+        this.reportDownloadConcurrency = reportDownloadConcurrency;
+    }
+
+    public Boolean getReuseScannedImages() {
+        return reuseScannedImages;
+    }
+
+    @DataBoundSetter
+    public void setReuseScannedImages(Boolean reuseScannedImages) {
+        this.reuseScannedImages = reuseScannedImages;
+    }
+
+    public String getReportFormat() {
+        return reportFormat;
+    }
+
+    @DataBoundSetter
+    public void setReportFormat(String reportFormat) {
+        this.reportFormat = reportFormat;
+    }
+
+    public String getMaxUploadRate() {
+        return maxUploadRate;
+    }
+
+    @DataBoundSetter
+    public void setMaxUploadRate(String maxUploadRate) {
+        this.maxUploadRate = maxUploadRate;
+    }
+
+    public List<ScanImage> getImages() {
+        return images;
+    }
+
+    @DataBoundSetter
+    public void setImages(List<ScanImage> images) {
+        this.images = images;
+    }
+
+    public String getBatchConcurrency() {
+        return batchConcurrency;
+    }
+
+    @DataBoundSetter
+    public void setBatchConcurrency(String batchConcurrency) {
+        this.batchConcurrency = batchConcurrency;
+    }
+
     @DataBoundSetter
     public void setFailThreshold(String failThreshold) {
         this.failThreshold = failThreshold;
@@ -111,6 +177,11 @@ public class ScannerBuilder extends Builder implements SimpleBuildStep {
         this.maxMaliciousFiles = maxMaliciousFiles;
     }
 
+    @DataBoundSetter
+    public void setMaxNewCVEs(String maxNewCVEs) {
+        this.maxNewCVEs = maxNewCVEs;
+    }
+
     @DataBoundSetter
     public void setProductId(String productId) {
         this.productId = Integer.parseInt(productId);
@@ -128,21 +199,41 @@ public class ScannerBuilder extends Builder implements SimpleBuildStep {
 
     @Override
     public void perform(Run<?, ?> run, FilePath workspace, Launcher launcher, TaskListener listener) throws InterruptedException, IOException {
-        run.addAction(new ScannerAction(
-                this.vdooToken,
-                failThreshold,
-                maxHighlightedIssues,
-                maxHighlightedExposures,
-                maxHighlightedCVEs,
-                maxMaliciousFiles,
-                productId,
-                firmwareLocation,
-                this.baseApi,
-                this.waitForResults,
+        ScanSettings settings = new ScanSettings()
+                .setVdooToken(vdooToken)
+                .setFailThreshold(failThreshold)
+                .setMaxHighlightedIssues(maxHighlightedIssues)
+                .setMaxHighlightedExposures(maxHighlightedExposures)
+                .setMaxHighlightedCVEs(maxHighlightedCVEs)
+                .setMaxMaliciousFiles(maxMaliciousFiles)
+                .setMaxNewCVEs(maxNewCVEs)
+                .setProductId(productId)
+                .setFirmwareLocation(firmwareLocation)
+                .setBaseApi(baseApi)
+                .setWaitForResults(waitForResults)
+                .setReportDownloadConcurrency(reportDownloadConcurrency)
+                .setReuseScannedImages(reuseScannedImages)
+                .setReportFormat(reportFormat)
+                .setMaxUploadRate(maxUploadRate);
+
+        if (!BatchScan.isBatch(firmwareLocation, images)) {
+            run.addAction(new ScannerAction(settings, listener, run, workspace));
+            return;
+        }
+
+        new BatchScan(
+                BatchScan.expand(settings, images, workspace),
+                parseBatchConcurrency(batchConcurrency),
                 listener,
-                run,
-                workspace
-        ));
+                run
+        ).run(workspace);
+    }
+
+    static int parseBatchConcurrency(String batchConcurrency) {
+        if (batchConcurrency == null || batchConcurrency.equals("")) {
+            return BatchScan.DEFAULT_CONCURRENCY;
+        }
+        return Math.max(1, Integer.parseInt(batchConcurrency));
     }
 
     @Symbol("vdooScan")
@@ -260,6 +351,34 @@ public class ScannerBuilder extends Builder implements SimpleBuildStep {
             return FormValidation.ok();
         }
 
+        public FormValidation doCheckReportDownloadConcurrency(@QueryParameter String reportDownloadConcurrency) {
+            if (reportDownloadConcurrency == null || reportDownloadConcurrency.equals(""))
+                return FormValidation.ok();
+
+            try {
+                int reportDownloadConcurrencyNum = Integer.parseInt(reportDownloadConcurrency);
+                if (reportDownloadConcurrencyNum < 1) {
+                    return FormValidation.error(Messages.ScannerBuilder_DescriptorImpl_PositiveNumber());
+                }
+            } catch (NumberFormatException nfe) {
+                return FormValidation.error(Messages.ScannerBuilder_DescriptorImpl_MaxNumber());
+            }
+
+            return FormValidation.ok();
+        }
+
+        public FormValidation doCheckBatchConcurrency(@QueryParameter String batchConcurrency) {
+            return doCheckReportDownloadConcurrency(batchConcurrency);
+        }
+
+        public FormValidation doCheckMaxUploadRate(@QueryParameter String maxUploadRate) {
+            return doCheckMaxMaliciousFiles(maxUploadRate);
+        }
+
+        public FormValidation doCheckMaxNewCVEs(@QueryParameter String maxNewCVEs) {
+            return doCheckMaxMaliciousFiles(maxNewCVEs);
+        }
+
         @Override
         public boolean isApplicable(Class<? extends AbstractProject> aClass) {
             return true;
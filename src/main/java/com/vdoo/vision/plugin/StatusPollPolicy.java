@@ -0,0 +1,64 @@
+package com.vdoo.vision.plugin;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * When to poll the status of a scan: often at first, so fast scans are noticed within seconds, then twice as rarely
+ * after every poll up to a maximal interval, so long scans only cost a handful of requests. A Retry-After sent by the
+ * server always wins over a shorter interval.
+ */
+final class StatusPollPolicy {
+    static final int DEFAULT_INITIAL_POLL_SECONDS = 5;
+    static final int DEFAULT_MAX_POLL_SECONDS = 120;
+    static final int DEFAULT_SCAN_TIMEOUT_MINUTES = 60;
+
+    // While callbacks are enabled, polls are only a fallback for lost notifications
+    static final long CALLBACK_FALLBACK_POLL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private final long initialPollMillis;
+    private final long maxPollMillis;
+    private final long scanTimeoutMillis;
+    private final boolean isCallbackEnabled;
+
+    StatusPollPolicy(long initialPollMillis, long maxPollMillis, long scanTimeoutMillis, boolean isCallbackEnabled) {
+        this.initialPollMillis = initialPollMillis;
+        this.maxPollMillis = Math.max(initialPollMillis, maxPollMillis);
+        this.scanTimeoutMillis = scanTimeoutMillis;
+        this.isCallbackEnabled = isCallbackEnabled;
+    }
+
+    static StatusPollPolicy current() {
+        VdooGlobalConfiguration config = VdooGlobalConfiguration.get();
+        if (config == null) {
+            return new StatusPollPolicy(
+                    TimeUnit.SECONDS.toMillis(DEFAULT_INITIAL_POLL_SECONDS),
+                    TimeUnit.SECONDS.toMillis(DEFAULT_MAX_POLL_SECONDS),
+                    TimeUnit.MINUTES.toMillis(DEFAULT_SCAN_TIMEOUT_MINUTES),
+                    false
+            );
+        }
+        return new StatusPollPolicy(
+                TimeUnit.SECONDS.toMillis(config.getStatusPollInitialSeconds()),
+                TimeUnit.SECONDS.toMillis(config.getStatusPollMaxSeconds()),
+                TimeUnit.MINUTES.toMillis(config.getScanTimeoutMinutes()),
+                config.isCallbackEnabled()
+        );
+    }
+
+    /*
+     * Milliseconds until the next poll, after 'polls' polls of the scan were made. retryAfterMillis is -1 if the
+     * server did not ask to wait.
+     */
+    long getPollDelayMillis(int polls, long retryAfterMillis) {
+        long delayMillis = initialPollMillis << Math.min(Math.max(polls - 1, 0), 20);
+        delayMillis = Math.min(delayMillis, maxPollMillis);
+        if (isCallbackEnabled) {
+            delayMillis = Math.max(delayMillis, CALLBACK_FALLBACK_POLL_MILLIS);
+        }
+        return Math.max(delayMillis, retryAfterMillis);
+    }
+
+    long getScanTimeoutMillis() {
+        return scanTimeoutMillis;
+    }
+}
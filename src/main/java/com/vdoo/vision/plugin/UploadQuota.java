@@ -0,0 +1,95 @@
+package com.vdoo.vision.plugin;
+
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/*
+ * Jenkins-wide cap on the number of image parts uploaded at the same time, set in the global configuration.
+ *
+ * Uploads run on the agents, so the cap is enforced by leasing part slots on the controller before an upload starts.
+ * An upload gets as many slots as are free, but no more than an equal share (rounded up) among the uploads that run
+ * or wait. Its lease bounds how many parts it sends at once (see VdooSDK.setMaxUploadConcurrency) until it ends.
+ * While all the slots are leased, uploads wait for their turn, first come first served.
+ */
+final class UploadQuota {
+    private static final UploadQuota INSTANCE = new UploadQuota();
+
+    private final Deque<Object> waiting = new ArrayDeque<>();
+    private int leasedParts;
+    private int leases;
+
+    static UploadQuota get() {
+        return INSTANCE;
+    }
+
+    private static int getMaxParts() {
+        VdooGlobalConfiguration config = VdooGlobalConfiguration.get();
+        return config == null ? 0 : config.getMaxConcurrentUploadParts();
+    }
+
+    /*
+     * Waits until the upload may start, and returns its lease. Close the lease once the upload ended.
+     */
+    synchronized Lease acquire(PrintStream logger) throws InterruptedException {
+        int maxParts = getMaxParts();
+        if (maxParts <= 0) {
+            return new Lease(0);
+        }
+
+        Object ticket = new Object();
+        waiting.addLast(ticket);
+        try {
+            boolean isQueued = false;
+            while (waiting.peekFirst() != ticket || leasedParts >= maxParts) {
+                if (!isQueued) {
+                    logger.println(String.format(Messages.ScannerAction_UploadQueued(), maxParts, waiting.size() - 1));
+                    isQueued = true;
+                }
+                wait();
+                maxParts = getMaxParts();
+                if (maxParts <= 0) {
+                    return new Lease(0);
+                }
+            }
+        } finally {
+            waiting.remove(ticket);
+            notifyAll();
+        }
+
+        int uploads = leases + 1 + waiting.size();
+        int share = (maxParts + uploads - 1) / uploads;
+        int parts = Math.min(share, maxParts - leasedParts);
+        leasedParts += parts;
+        leases++;
+        return new Lease(parts);
+    }
+
+    private synchronized void release(int parts) {
+        leasedParts -= parts;
+        leases--;
+        notifyAll();
+    }
+
+    /*
+     * Part slots leased by an upload. 0 parts when there is no cap.
+     */
+    final class Lease implements AutoCloseable {
+        private final int parts;
+
+        private Lease(int parts) {
+            this.parts = parts;
+        }
+
+        int getParts() {
+            return parts;
+        }
+
+        @Override
+        public void close() {
+            if (parts > 0) {
+                release(parts);
+            }
+        }
+    }
+}
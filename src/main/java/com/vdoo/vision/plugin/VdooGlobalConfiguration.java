@@ -0,0 +1,138 @@
+package com.vdoo.vision.plugin;
+
+import hudson.Extension;
+import hudson.init.Terminator;
+import hudson.util.Secret;
+import jenkins.model.GlobalConfiguration;
+import org.jenkinsci.Symbol;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import com.vdoo.sdk.UploadScheduler;
+
+/*
+ * Settings of the plugin that apply to all jobs, under Manage Jenkins > Configure System.
+ */
+@Symbol("vdooVision")
+@Extension
+public class VdooGlobalConfiguration extends GlobalConfiguration {
+
+    private Secret callbackSecret;
+    private int statusPollInitialSeconds = StatusPollPolicy.DEFAULT_INITIAL_POLL_SECONDS;
+    private int statusPollMaxSeconds = StatusPollPolicy.DEFAULT_MAX_POLL_SECONDS;
+    private int scanTimeoutMinutes = StatusPollPolicy.DEFAULT_SCAN_TIMEOUT_MINUTES;
+    private int reportCacheSizeMB = ReportCache.DEFAULT_MAX_SIZE_MB;
+    private int maxConcurrentUploadParts;
+    private int maxUploadRatePerScan;
+    private int maxUploadRatePerNode;
+
+    public VdooGlobalConfiguration() {
+        load();
+    }
+
+    public static VdooGlobalConfiguration get() {
+        return GlobalConfiguration.all().get(VdooGlobalConfiguration.class);
+    }
+
+    public Secret getCallbackSecret() {
+        return callbackSecret;
+    }
+
+    @DataBoundSetter
+    public void setCallbackSecret(Secret callbackSecret) {
+        this.callbackSecret = callbackSecret;
+        save();
+    }
+
+    public int getStatusPollInitialSeconds() {
+        return statusPollInitialSeconds;
+    }
+
+    @DataBoundSetter
+    public void setStatusPollInitialSeconds(int statusPollInitialSeconds) {
+        this.statusPollInitialSeconds = Math.max(1, statusPollInitialSeconds);
+        save();
+    }
+
+    public int getStatusPollMaxSeconds() {
+        return statusPollMaxSeconds;
+    }
+
+    @DataBoundSetter
+    public void setStatusPollMaxSeconds(int statusPollMaxSeconds) {
+        this.statusPollMaxSeconds = Math.max(1, statusPollMaxSeconds);
+        save();
+    }
+
+    public int getScanTimeoutMinutes() {
+        return scanTimeoutMinutes;
+    }
+
+    @DataBoundSetter
+    public void setScanTimeoutMinutes(int scanTimeoutMinutes) {
+        this.scanTimeoutMinutes = Math.max(1, scanTimeoutMinutes);
+        save();
+    }
+
+    public int getReportCacheSizeMB() {
+        return reportCacheSizeMB;
+    }
+
+    // 0 disables the report cache
+    @DataBoundSetter
+    public void setReportCacheSizeMB(int reportCacheSizeMB) {
+        this.reportCacheSizeMB = Math.max(0, reportCacheSizeMB);
+        save();
+    }
+
+    public int getMaxConcurrentUploadParts() {
+        return maxConcurrentUploadParts;
+    }
+
+    // 0 for no cap, see UploadQuota
+    @DataBoundSetter
+    public void setMaxConcurrentUploadParts(int maxConcurrentUploadParts) {
+        this.maxConcurrentUploadParts = Math.max(0, maxConcurrentUploadParts);
+        save();
+    }
+
+    public int getMaxUploadRatePerScan() {
+        return maxUploadRatePerScan;
+    }
+
+    // In KB/s, 0 for no limit. Steps can set their own limit instead.
+    @DataBoundSetter
+    public void setMaxUploadRatePerScan(int maxUploadRatePerScan) {
+        this.maxUploadRatePerScan = Math.max(0, maxUploadRatePerScan);
+        save();
+    }
+
+    public int getMaxUploadRatePerNode() {
+        return maxUploadRatePerNode;
+    }
+
+    // In KB/s, 0 for no limit
+    @DataBoundSetter
+    public void setMaxUploadRatePerNode(int maxUploadRatePerNode) {
+        this.maxUploadRatePerNode = Math.max(0, maxUploadRatePerNode);
+        save();
+    }
+
+    /*
+     * Scan completion callbacks are only accepted once a secret to sign them with is configured.
+     */
+    public boolean isCallbackEnabled() {
+        return callbackSecret != null && !callbackSecret.getPlainText().equals("");
+    }
+
+    /*
+     * Stops the threads of the plugin when Jenkins stops. Jenkins only calls the terminators of public classes, so
+     * the hook is here rather than on the package-private classes that own the threads.
+     */
+    @Terminator
+    public static void shutdown() {
+        ScanStatusPoller.get().stop();
+        // The upload workers are daemon threads, but uploads still running are interrupted rather than cut off
+        UploadScheduler.get().shutdown();
+        VdooScanStep.stopUploads();
+    }
+}
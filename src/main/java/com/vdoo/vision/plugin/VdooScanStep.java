@@ -0,0 +1,450 @@
+package com.vdoo.vision.plugin;
+
+import hudson.FilePath;
+import hudson.Extension;
+import hudson.AbortException;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.util.Secret;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import java.util.Set;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Arrays;
+import java.util.concurrent.Future;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.jenkinsci.plugins.workflow.steps.Step;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
+import org.jenkinsci.plugins.workflow.steps.StepExecution;
+
+import com.vdoo.sdk.ScanStatus;
+
+/*
+ * Pipeline flavour of ScannerBuilder. The step does not block a thread of the Pipeline while the image is scanned:
+ * the image is uploaded in the background, and the scan is waited for by ScanStatusPoller.
+ * Returns the UUID of the scanned image.
+ */
+public class VdooScanStep extends Step {
+
+    private final ScanSettings settings = new ScanSettings();
+    private String imageUuid;
+    private List<ScanImage> images;
+    private String batchConcurrency;
+
+    @DataBoundConstructor
+    public VdooScanStep() {}
+
+    public Secret getVdooToken() {
+        return settings.getVdooToken();
+    }
+
+    @DataBoundSetter
+    public void setVdooToken(Secret vdooToken) {
+        settings.setVdooToken(vdooToken);
+    }
+
+    public String getFailThreshold() {
+        return settings.getFailThreshold();
+    }
+
+    @DataBoundSetter
+    public void setFailThreshold(String failThreshold) {
+        settings.setFailThreshold(failThreshold);
+    }
+
+    public String getMaxHighlightedIssues() {
+        return settings.getMaxHighlightedIssues();
+    }
+
+    @DataBoundSetter
+    public void setMaxHighlightedIssues(String maxHighlightedIssues) {
+        settings.setMaxHighlightedIssues(maxHighlightedIssues);
+    }
+
+    public String getMaxHighlightedExposures() {
+        return settings.getMaxHighlightedExposures();
+    }
+
+    @DataBoundSetter
+    public void setMaxHighlightedExposures(String maxHighlightedExposures) {
+        settings.setMaxHighlightedExposures(maxHighlightedExposures);
+    }
+
+    public String getMaxHighlightedCVEs() {
+        return settings.getMaxHighlightedCVEs();
+    }
+
+    @DataBoundSetter
+    public void setMaxHighlightedCVEs(String maxHighlightedCVEs) {
+        settings.setMaxHighlightedCVEs(maxHighlightedCVEs);
+    }
+
+    public String getMaxMaliciousFiles() {
+        return settings.getMaxMaliciousFiles();
+    }
+
+    // Named like the setter of ScannerBuilder, so scripts that used the build step keep working
+    @DataBoundSetter
+    public void setMaliciousFiles(String maxMaliciousFiles) {
+        settings.setMaxMaliciousFiles(maxMaliciousFiles);
+    }
+
+    public String getMaxNewCVEs() {
+        return settings.getMaxNewCVEs();
+    }
+
+    @DataBoundSetter
+    public void setMaxNewCVEs(String maxNewCVEs) {
+        settings.setMaxNewCVEs(maxNewCVEs);
+    }
+
+    public Integer getProductId() {
+        return settings.getProductId();
+    }
+
+    @DataBoundSetter
+    public void setProductId(String productId) {
+        settings.setProductId(Integer.parseInt(productId));
+    }
+
+    public String getFirmwareLocation() {
+        return settings.getFirmwareLocation();
+    }
+
+    @DataBoundSetter
+    public void setFirmwareLocation(String firmwareLocation) {
+        settings.setFirmwareLocation(firmwareLocation);
+    }
+
+    public String getBaseApi() {
+        return settings.getBaseApi();
+    }
+
+    @DataBoundSetter
+    public void setBaseApi(String baseApi) {
+        settings.setBaseApi(baseApi);
+    }
+
+    public Boolean getWaitForResults() {
+        return settings.getWaitForResults();
+    }
+
+    @DataBoundSetter
+    public void setWaitForResults(Boolean waitForResults) {
+        settings.setWaitForResults(waitForResults);
+    }
+
+    public String getReportDownloadConcurrency() {
+        return settings.getReportDownloadConcurrency();
+    }
+
+    @DataBoundSetter
+    public void setReportDownloadConcurrency(String reportDownloadConcurrency) {
+        settings.setReportDownloadConcurrency(reportDownloadConcurrency);
+    }
+
+    public Boolean getReuseScannedImages() {
+        return settings.getReuseScannedImages();
+    }
+
+    @DataBoundSetter
+    public void setReuseScannedImages(Boolean reuseScannedImages) {
+        settings.setReuseScannedImages(reuseScannedImages);
+    }
+
+    public String getReportFormat() {
+        return settings.getReportFormat();
+    }
+
+    @DataBoundSetter
+    public void setReportFormat(String reportFormat) {
+        settings.setReportFormat(reportFormat);
+    }
+
+    public String getMaxUploadRate() {
+        return settings.getMaxUploadRate();
+    }
+
+    @DataBoundSetter
+    public void setMaxUploadRate(String maxUploadRate) {
+        settings.setMaxUploadRate(maxUploadRate);
+    }
+
+    public List<ScanImage> getImages() {
+        return images;
+    }
+
+    /*
+     * Images scanned along with the one of firmwareLocation, see BatchScan. The step then returns the list of their
+     * UUIDs.
+     */
+    @DataBoundSetter
+    public void setImages(List<ScanImage> images) {
+        this.images = images;
+    }
+
+    public String getBatchConcurrency() {
+        return batchConcurrency;
+    }
+
+    @DataBoundSetter
+    public void setBatchConcurrency(String batchConcurrency) {
+        this.batchConcurrency = batchConcurrency;
+    }
+
+    public String getImageUuid() {
+        return imageUuid;
+    }
+
+    /*
+     * Scans an image that was already uploaded (e.g. by an earlier vdooVisionScan with waitForResults: false) instead
+     * of uploading one. Such a step needs no workspace, so it can wait for the scan outside of a node block.
+     */
+    @DataBoundSetter
+    public void setImageUuid(String imageUuid) {
+        this.imageUuid = imageUuid == null || imageUuid.equals("") ? null : imageUuid;
+    }
+
+    @Override
+    public StepExecution start(StepContext context) throws Exception {
+        if (imageUuid == null && BatchScan.isBatch(settings.getFirmwareLocation(), images)) {
+            return new Execution(context, settings, images, ScannerBuilder.parseBatchConcurrency(batchConcurrency));
+        }
+        return new Execution(context, settings, imageUuid);
+    }
+
+    /*
+     * Interrupts the uploads and report downloads still running, when Jenkins stops, see
+     * VdooGlobalConfiguration.shutdown.
+     */
+    static void stopUploads() {
+        Execution.UPLOADS.shutdownNow();
+    }
+
+    private static final class Execution extends StepExecution {
+        private static final long serialVersionUID = 1;
+
+        // Uploads and report downloads can take a long time, so they do not run on the shared Timer threads
+        private static final ExecutorService UPLOADS = Executors.newCachedThreadPool(
+                new NamingThreadFactory(new DaemonThreadFactory(), "VdooVision upload")
+        );
+
+        private final ScanSettings settings;
+        private final boolean isBatch;
+        private final int batchConcurrency;
+        private volatile String firmwareUUID;
+        private volatile long waitStartMillis;
+        private volatile String status;
+
+        private transient volatile ScannerAction action;
+        private transient volatile Future<?> task;
+        private transient volatile CompletableFuture<ScanStatus> scanEnd;
+        private transient volatile BatchScan batch;
+        // Only needed to start the batch, which is not resumed after a restart
+        private final transient List<ScanImage> images;
+
+        Execution(StepContext context, ScanSettings settings, String firmwareUUID) {
+            super(context);
+            this.settings = settings;
+            this.firmwareUUID = firmwareUUID;
+            this.isBatch = false;
+            this.batchConcurrency = 0;
+            this.images = null;
+        }
+
+        Execution(StepContext context, ScanSettings settings, List<ScanImage> images, int batchConcurrency) {
+            super(context);
+            this.settings = settings;
+            this.isBatch = true;
+            this.batchConcurrency = batchConcurrency;
+            this.images = images;
+        }
+
+        @Override
+        public boolean start() throws Exception {
+            if (isBatch) {
+                startBatch();
+                return false;
+            }
+
+            action = createAction();
+
+            if (firmwareUUID != null) {
+                action.useUploadedImage(firmwareUUID);
+                waitForScan();
+                return false;
+            }
+
+            FilePath workspace = getContext().get(FilePath.class);
+            if (workspace == null) {
+                throw new AbortException(Messages.VdooScanStep_WorkspaceMissing());
+            }
+
+            status = "Uploading " + settings.getFirmwareLocation();
+            task = UPLOADS.submit(() -> {
+                try {
+                    action.upload(workspace);
+                    firmwareUUID = action.getFirmwareUUID();
+
+                    if (Boolean.TRUE.equals(settings.getWaitForResults())) {
+                        waitForScan();
+                    } else {
+                        finish();
+                    }
+                } catch (Throwable t) {
+                    getContext().onFailure(t);
+                }
+            });
+            return false;
+        }
+
+        private void startBatch() throws Exception {
+            FilePath workspace = getContext().get(FilePath.class);
+            if (workspace == null) {
+                throw new AbortException(Messages.VdooScanStep_WorkspaceMissing());
+            }
+            TaskListener listener = getContext().get(TaskListener.class);
+            Run<?, ?> run = getContext().get(Run.class);
+
+            status = "Scanning a batch of images";
+            task = UPLOADS.submit(() -> {
+                try {
+                    batch = new BatchScan(BatchScan.expand(settings, images, workspace), batchConcurrency, listener, run);
+                    batch.start(workspace).whenComplete((results, error) -> {
+                        try {
+                            ArrayList<String> imageUuids = new ArrayList<>();
+                            for (BatchScan.ImageResult result : batch.finish(results)) {
+                                imageUuids.add(result.getAction().getFirmwareUUID());
+                            }
+                            getContext().onSuccess(imageUuids);
+                        } catch (Throwable t) {
+                            getContext().onFailure(t);
+                        }
+                    });
+                } catch (Throwable t) {
+                    getContext().onFailure(t);
+                }
+            });
+        }
+
+        private ScannerAction createAction() throws Exception {
+            return new ScannerAction(
+                    settings,
+                    getContext().get(TaskListener.class),
+                    getContext().get(Run.class)
+            );
+        }
+
+        /*
+         * Has ScanStatusPoller wait for the scan, and finishes the step once it ended.
+         */
+        private void waitForScan() {
+            if (waitStartMillis == 0) {
+                waitStartMillis = System.currentTimeMillis();
+            }
+            status = "Waiting for the scan of image " + firmwareUUID;
+
+            scanEnd = action.watchScanStatus(waitStartMillis);
+            scanEnd.whenComplete((scanStatus, error) -> {
+                if (error == null) {
+                    task = UPLOADS.submit(this::finish);
+                } else if (!(error instanceof CancellationException)) {
+                    getContext().onFailure(error);
+                }
+            });
+        }
+
+        private void finish() {
+            try {
+                status = "Downloading the report of image " + firmwareUUID;
+                action.finishScan();
+                getContext().get(Run.class).addAction(action);
+                getContext().onSuccess(firmwareUUID);
+            } catch (Throwable t) {
+                getContext().onFailure(t);
+            }
+        }
+
+        @Override
+        public void stop(Throwable cause) throws Exception {
+            CompletableFuture<ScanStatus> scanEnd = this.scanEnd;
+            if (scanEnd != null) {
+                scanEnd.cancel(false);
+            }
+
+            BatchScan batch = this.batch;
+            if (batch != null) {
+                batch.cancel();
+            }
+
+            Future<?> task = this.task;
+            if (task != null) {
+                task.cancel(true);
+            }
+            getContext().onFailure(cause);
+        }
+
+        /*
+         * Waiting for the scan is picked up again after a restart. An upload that was interrupted can not be, as the
+         * workspace might be gone, but running the step again resumes it from where it stopped.
+         */
+        @Override
+        public void onResume() {
+            if (isBatch) {
+                getContext().onFailure(new AbortException(Messages.VdooScanStep_BatchInterrupted()));
+                return;
+            }
+            if (firmwareUUID == null) {
+                getContext().onFailure(new AbortException(Messages.VdooScanStep_UploadInterrupted()));
+                return;
+            }
+
+            try {
+                action = createAction();
+                action.useUploadedImage(firmwareUUID);
+                waitForScan();
+            } catch (Throwable t) {
+                getContext().onFailure(t);
+            }
+        }
+
+        @Override
+        public String getStatus() {
+            return status;
+        }
+    }
+
+    @Extension
+    public static final class DescriptorImpl extends StepDescriptor {
+
+        @Override
+        public Set<? extends Class<?>> getRequiredContext() {
+            // The workspace is only needed to upload the image, see setImageUuid
+            return new HashSet<>(Arrays.asList(Run.class, TaskListener.class));
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "vdooVisionScan";
+        }
+
+        @Override
+        public String getDisplayName() {
+            return Messages.VdooScanStep_DisplayName();
+        }
+
+        // The step is configured with the same form as the build step
+        public Class<ScannerBuilder> getScannerBuilderClass() {
+            return ScannerBuilder.class;
+        }
+    }
+}
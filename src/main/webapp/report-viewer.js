@@ -0,0 +1,134 @@
+/*
+ * Report page of a build: pages through the report parts saved with the build, using the findings endpoint of
+ * ScannerAction. Only the page on screen is fetched, so large reports do not slow the page down.
+ */
+(function () {
+    var viewer = document.getElementById("vdoo-report-viewer");
+    if (!viewer) {
+        return;
+    }
+
+    var PAGE_SIZE = 50;
+    var findingsUrl = viewer.getAttribute("data-findings-url");
+    var severitySelect = viewer.querySelector(".vdoo-report-severity");
+    var queryInput = viewer.querySelector(".vdoo-report-query");
+    var sortSelect = viewer.querySelector(".vdoo-report-sort");
+    var entries = viewer.querySelector(".vdoo-report-entries tbody");
+    var pageLabel = viewer.querySelector(".vdoo-report-page");
+    var previousButton = viewer.querySelector(".vdoo-report-previous");
+    var nextButton = viewer.querySelector(".vdoo-report-next");
+
+    var state = {part: "cves", page: 0, pages: 0};
+    var request = null;
+
+    function load() {
+        var params = [
+            "part=" + encodeURIComponent(state.part),
+            "page=" + state.page,
+            "pageSize=" + PAGE_SIZE,
+            "severity=" + encodeURIComponent(severitySelect.value),
+            "q=" + encodeURIComponent(queryInput.value),
+            "sort=" + encodeURIComponent(sortSelect.value),
+            "order=asc"
+        ];
+
+        if (request) {
+            request.abort();
+        }
+        request = new XMLHttpRequest();
+        request.open("GET", findingsUrl + "?" + params.join("&"));
+        request.onload = function () {
+            if (this.status === 200) {
+                show(JSON.parse(this.responseText));
+            } else {
+                showMessage("This part of the report was not saved with the build.");
+            }
+        };
+        request.send();
+    }
+
+    function show(findings) {
+        state.pages = Math.max(1, Math.ceil(findings.matches / findings.pageSize));
+
+        var selectedSeverity = severitySelect.value;
+        severitySelect.options.length = 1;
+        Object.keys(findings.severities).forEach(function (severity) {
+            var option = new Option(severity + " (" + findings.severities[severity] + ")", severity);
+            option.selected = severity === selectedSeverity;
+            severitySelect.add(option);
+        });
+
+        entries.innerHTML = "";
+        findings.entries.forEach(function (entry) {
+            var row = entries.insertRow();
+            row.insertCell().textContent = entryKey(entry);
+            row.insertCell().textContent = entrySeverity(entry);
+
+            var details = document.createElement("details");
+            var summary = document.createElement("summary");
+            summary.textContent = "Show";
+            var json = document.createElement("pre");
+            json.textContent = JSON.stringify(entry, null, 2);
+            details.appendChild(summary);
+            details.appendChild(json);
+            row.insertCell().appendChild(details);
+        });
+        if (findings.entries.length === 0) {
+            showMessage("No findings.");
+        }
+
+        pageLabel.textContent = "Page " + (state.page + 1) + " of " + state.pages + " (" + findings.matches + " of "
+            + findings.total + ")";
+        previousButton.disabled = state.page === 0;
+        nextButton.disabled = state.page + 1 >= state.pages;
+    }
+
+    // Same fields, in the same order, as the keys of ReportIndex
+    function entryKey(entry) {
+        return entry.cve_id || entry.name || entry.file_name || entry.path || entry.id || "";
+    }
+
+    // Same fields, in the same order, as the severities of ReportIndex
+    function entrySeverity(entry) {
+        return entry.severity || entry.threat_level || entry.risk_level || "";
+    }
+
+    function showMessage(message) {
+        entries.innerHTML = "";
+        var cell = entries.insertRow().insertCell();
+        cell.colSpan = 3;
+        cell.textContent = message;
+    }
+
+    function reload() {
+        state.page = 0;
+        load();
+    }
+
+    Array.prototype.forEach.call(viewer.querySelectorAll("button[data-part]"), function (button) {
+        button.addEventListener("click", function () {
+            state.part = button.getAttribute("data-part");
+            severitySelect.value = "";
+            reload();
+        });
+    });
+    severitySelect.addEventListener("change", reload);
+    sortSelect.addEventListener("change", reload);
+
+    var queryTimer = null;
+    queryInput.addEventListener("input", function () {
+        clearTimeout(queryTimer);
+        queryTimer = setTimeout(reload, 300);
+    });
+
+    previousButton.addEventListener("click", function () {
+        state.page--;
+        load();
+    });
+    nextButton.addEventListener("click", function () {
+        state.page++;
+        load();
+    });
+
+    load();
+})();
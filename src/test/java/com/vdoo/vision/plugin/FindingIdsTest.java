@@ -0,0 +1,100 @@
+package com.vdoo.vision.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class FindingIdsTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void findingsAreComparedByTheKeyOfTheirIndex() throws IOException {
+        // The ids of the entries change between the builds, their CVE ids and names do not
+        FindingIds reference = write(
+                "[{\"id\": 1, \"cve_id\": \"CVE-2021-3711\"}, {\"id\": 2, \"cve_id\": \"CVE-2021-3712\"}]",
+                "[{\"id\": 10, \"name\": \"openssl\", \"version\": \"1.1.1k\"},"
+                        + " {\"id\": 11, \"name\": \"zlib\", \"version\": \"1.2.11\"}]"
+        );
+        FindingIds current = write(
+                "[{\"cve_id\": \"CVE-2021-3712\", \"id\": 5}, {\"id\": 6, \"cve_id\": \"CVE-2022-0778\"}]",
+                "[{\"id\": 20, \"name\": \"openssl\", \"version\": \"1.1.1l\"},"
+                        + " {\"version\": \"1.2.11\", \"id\": 21, \"name\": \"zlib\"}]"
+        );
+
+        FindingsDiff diff = FindingsDiff.compute(41, current, reference);
+
+        assertEquals(41, diff.getReferenceBuild());
+        assertEquals(Collections.singletonList("CVE-2022-0778"), diff.getNewCves());
+        assertEquals(Collections.singletonList("CVE-2021-3711"), diff.getFixedCves());
+        assertEquals(Collections.emptyList(), diff.getNewExposures());
+        assertEquals(Collections.emptyList(), diff.getFixedExposures());
+        assertEquals(1, diff.getChangedComponents().size());
+        FindingsDiff.ComponentChange change = diff.getChangedComponents().get(0);
+        assertEquals("openssl", change.getName());
+        assertEquals("1.1.1k", change.getFrom());
+        assertEquals("1.1.1l", change.getTo());
+    }
+
+    @Test
+    public void sameFindingsHaveNoDifferences() throws IOException {
+        FindingIds reference = write("[{\"id\": 1, \"cve_id\": \"CVE-2021-3711\"}]", null);
+        FindingIds current = write("[{\"id\": 2, \"cve_id\": \"CVE-2021-3711\"}]", null);
+
+        FindingsDiff diff = FindingsDiff.compute(1, current, reference);
+
+        assertEquals(Collections.emptyList(), diff.getNewCves());
+        assertEquals(Collections.emptyList(), diff.getFixedCves());
+        assertEquals(Collections.emptyList(), diff.getChangedComponents());
+    }
+
+    @Test
+    public void reportWithoutIdsHasNone() throws IOException {
+        assertNull(FindingIds.load(folder.newFolder()));
+    }
+
+    @Test
+    public void truncatedIdsFailToLoad() throws IOException {
+        File reportDirectory = writeReport("[{\"id\": 1, \"cve_id\": \"CVE-2021-3711\"}]", null);
+        FindingIds.write(reportDirectory, ReportFormat.JSON);
+        File file = new File(reportDirectory, FindingIds.FILE_NAME);
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        Files.write(file.toPath(), Arrays.copyOf(bytes, bytes.length / 2));
+
+        try {
+            FindingIds.load(reportDirectory);
+            fail("A truncated file was loaded");
+        } catch (IOException e) {
+            // The caller skips the build, as if it had saved no ids
+        }
+    }
+
+    private FindingIds write(String cves, String components) throws IOException {
+        return FindingIds.write(writeReport(cves, components), ReportFormat.JSON);
+    }
+
+    private File writeReport(String cves, String components) throws IOException {
+        File reportDirectory = folder.newFolder();
+        for (String[] part : Arrays.asList(new String[]{FindingIds.CVES, cves},
+                new String[]{FindingIds.COMPONENTS, components})) {
+            if (part[1] != null) {
+                Files.write(
+                        new File(reportDirectory, ReportFormat.JSON.getPartFileName(part[0])).toPath(),
+                        part[1].getBytes(StandardCharsets.UTF_8)
+                );
+            }
+        }
+        return reportDirectory;
+    }
+}
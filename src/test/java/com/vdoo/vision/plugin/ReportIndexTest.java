@@ -0,0 +1,50 @@
+package com.vdoo.vision.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ReportIndexTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void keyAndSeverityFollowTheFieldPriority() throws IOException {
+        ReportIndex index = index(
+                "{\"id\": 123, \"cve_id\": \"CVE-2021-3711\", \"risk_level\": \"Low\", \"severity\": \"High\"}",
+                "{\"cve_id\": null, \"id\": 7, \"name\": \"openssl\", \"threat_level\": \"Medium\"}",
+                "{\"cve_id\": \"\", \"path\": \"/usr/lib/libz.so\", \"id\": 8}"
+        );
+
+        assertArrayEquals(new int[]{0}, index.select(null, "CVE-2021", null, false));
+        assertArrayEquals(new int[0], index.select(null, "123", null, false));
+        assertArrayEquals(new int[]{1}, index.select(null, "openssl", null, false));
+        assertArrayEquals(new int[]{2}, index.select(null, "libz", null, false));
+        assertArrayEquals(new int[]{2, 0, 1}, index.select(null, null, "key", false));
+
+        Map<String, Integer> severities = index.countBySeverity();
+        assertEquals(Integer.valueOf(1), severities.get("High"));
+        assertEquals(Integer.valueOf(1), severities.get("Medium"));
+        assertEquals(Integer.valueOf(1), severities.get("Unknown"));
+        assertNull(severities.get("Low"));
+    }
+
+    private ReportIndex index(String... entries) throws IOException {
+        File reportDirectory = folder.newFolder();
+        Files.write(
+                new File(reportDirectory, ReportFormat.JSON.getPartFileName("cves")).toPath(),
+                ("[" + String.join(",", entries) + "]").getBytes(StandardCharsets.UTF_8)
+        );
+        return ReportIndex.write(reportDirectory, "cves", ReportFormat.JSON);
+    }
+}
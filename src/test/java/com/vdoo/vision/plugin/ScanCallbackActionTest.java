@@ -0,0 +1,148 @@
+package com.vdoo.vision.plugin;
+
+import hudson.util.Secret;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import com.vdoo.sdk.ScanStatus;
+import com.vdoo.sdk.VdooApiException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/*
+ * Posts scan completion notifications to JENKINS_URL/vdoo-scan-callback/ the way the Vdoo API does, and checks which
+ * of them end the wait of a build.
+ */
+public class ScanCallbackActionTest {
+    private static final String SECRET = "callback-secret";
+    private static final String IMAGE_UUID = "2f0c3bd4-5a1e-4d3c-9a43-8d1c0c6a6b1e";
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    private CompletableFuture<ScanStatus> scanEnd;
+
+    @Before
+    public void waitForScan() {
+        VdooGlobalConfiguration.get().setCallbackSecret(Secret.fromString(SECRET));
+
+        // The status can not be polled, so only a notification can end the wait
+        scanEnd = ScanStatusPoller.get().watch(
+                IMAGE_UUID,
+                etag -> {
+                    throw new VdooApiException(503, "Unavailable", null, TimeUnit.HOURS.toMillis(1));
+                },
+                ScanStatus::isDone
+        );
+    }
+
+    @After
+    public void stopWaiting() {
+        scanEnd.cancel(true);
+    }
+
+    @Test
+    public void signedNotificationEndsTheWait() throws Exception {
+        byte[] body = notification(IMAGE_UUID, ScanStatus.SUCCESS);
+
+        assertEquals(204, post(body, "sha256=" + ScanCallbackAction.sign(SECRET, body)));
+        assertEquals(ScanStatus.SUCCESS, scanEnd.get(10, TimeUnit.SECONDS).getName());
+    }
+
+    @Test
+    public void badSignatureIsRejected() throws Exception {
+        byte[] body = notification(IMAGE_UUID, ScanStatus.SUCCESS);
+
+        assertEquals(403, post(body, "sha256=" + ScanCallbackAction.sign("another-secret", body)));
+        assertEquals(403, post(body, ScanCallbackAction.sign(SECRET, body)));
+        assertFalse(scanEnd.isDone());
+    }
+
+    @Test
+    public void missingSignatureIsRejected() throws Exception {
+        assertEquals(403, post(notification(IMAGE_UUID, ScanStatus.SUCCESS), null));
+        assertFalse(scanEnd.isDone());
+    }
+
+    @Test
+    public void signatureOfAnotherBodyIsRejected() throws Exception {
+        byte[] signedBody = notification(IMAGE_UUID, ScanStatus.FAILURE);
+
+        assertEquals(403, post(notification(IMAGE_UUID, ScanStatus.SUCCESS),
+                "sha256=" + ScanCallbackAction.sign(SECRET, signedBody)));
+        assertFalse(scanEnd.isDone());
+    }
+
+    @Test
+    public void largeNotificationIsRejected() throws Exception {
+        byte[] padding = new byte[64 * 1024];
+        Arrays.fill(padding, (byte) ' ');
+        byte[] notification = notification(IMAGE_UUID, ScanStatus.SUCCESS);
+        byte[] body = Arrays.copyOf(notification, notification.length + padding.length);
+        System.arraycopy(padding, 0, body, notification.length, padding.length);
+
+        assertEquals(413, post(body, "sha256=" + ScanCallbackAction.sign(SECRET, body)));
+        assertFalse(scanEnd.isDone());
+    }
+
+    @Test
+    public void notificationOfUnknownImageIsIgnored() throws Exception {
+        byte[] body = notification("9b0e2a51-0c9f-4c7d-8f5e-1f3a2b4c5d6e", ScanStatus.SUCCESS);
+
+        assertEquals(204, post(body, "sha256=" + ScanCallbackAction.sign(SECRET, body)));
+        assertFalse(scanEnd.isDone());
+        assertEquals(1, ScanStatusPoller.get().getWatchedScans());
+    }
+
+    @Test
+    public void notificationOfRunningScanDoesNotEndTheWait() throws Exception {
+        byte[] body = notification(IMAGE_UUID, "Analyzing");
+
+        assertEquals(204, post(body, "sha256=" + ScanCallbackAction.sign(SECRET, body)));
+        assertFalse(scanEnd.isDone());
+    }
+
+    private static byte[] notification(String imageUuid, String status) {
+        return String.format(
+                "{\"image_uuid\": \"%s\", \"analysis_status\": {\"current\": {\"name\": \"%s\", "
+                        + "\"error_code\": null}}}",
+                imageUuid,
+                status
+        ).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private int post(byte[] body, String signature) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(j.getURL(), ScanCallbackAction.URL_NAME + "/")
+                .openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "application/json");
+        if (signature != null) {
+            connection.setRequestProperty(ScanCallbackAction.SIGNATURE_HEADER, signature);
+        }
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body);
+        } catch (IOException e) {
+            // A rejected body may be cut off before all of it was sent, the response still tells why
+        }
+        try {
+            return connection.getResponseCode();
+        } finally {
+            connection.disconnect();
+        }
+    }
+}